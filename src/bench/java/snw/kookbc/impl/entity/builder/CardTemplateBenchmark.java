@@ -0,0 +1,102 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.entity.builder;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.*;
+import snw.jkook.message.component.BaseComponent;
+import snw.jkook.message.component.card.MultipleCardComponent;
+import snw.kookbc.impl.network.JsonBody;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Sending a filled CardTemplate, against serializing a card of the same structure with CardBuilder on each send.
+// Both go through MessageBuilder.serialize and JsonBody, as TextChannelImpl#sendComponent does.
+// modules is the count of the modules in the message, spread over 5 cards, each module has 2 placeholders.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardTemplateBenchmark {
+    @Param({"10", "200"})
+    public int modules;
+
+    private CardTemplate template;
+    private MultipleCardComponent card;
+    private int score;
+    private final Buffer sink = new Buffer();
+
+    @Setup
+    public void setup() {
+        template = CardTemplate.compile(CardBuilder.buildCard(cards("{{name}}", "{{score}}")));
+        card = CardBuilder.buildCard(cards("user", "42"));
+    }
+
+    private JsonArray cards(String name, String score) {
+        JsonArray result = new JsonArray();
+        for (int i = 0; i < 5; i++) {
+            JsonObject card = new JsonObject();
+            card.addProperty("type", "card");
+            card.addProperty("theme", "primary");
+            card.addProperty("size", "lg");
+            JsonArray list = new JsonArray();
+            for (int j = 0; j < modules / 5; j++) {
+                JsonObject text = new JsonObject();
+                text.addProperty("type", "kmarkdown");
+                text.addProperty("content", "**" + name + "** scored " + score + " in round " + j);
+                JsonObject module = new JsonObject();
+                module.addProperty("type", "section");
+                module.add("text", text);
+                list.add(module);
+            }
+            card.add("modules", list);
+            result.add(card);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long template() throws IOException {
+        return write(template.fill("name", "user", "score", score++));
+    }
+
+    @Benchmark
+    public long serialize() throws IOException {
+        return write(card);
+    }
+
+    private long write(BaseComponent component) throws IOException {
+        Object[] serialized = MessageBuilder.serialize(component);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("target_id", "3000000001");
+        body.put("type", serialized[0]);
+        body.put("content", serialized[1]);
+        new JsonBody(body).writeTo(sink);
+        long size = sink.size();
+        sink.clear();
+        return size;
+    }
+}
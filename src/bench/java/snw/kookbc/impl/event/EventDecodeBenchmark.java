@@ -0,0 +1,133 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.event;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.NOPLogger;
+import snw.jkook.JKook;
+import snw.jkook.config.file.YamlConfiguration;
+import snw.jkook.event.Event;
+import snw.jkook.event.EventType;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.stub.KookStubServer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Classifying and decoding the events of each type, with a client connected to the stand-in server.
+// The entities are fetched from the stand-in server once, then they are cached like in a running bot.
+// classifyOld is the classification before the decoder table (Integer.parseInt, then EventType.value).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDecodeBenchmark {
+    private static final String USER = "{\"id\":\"1000000001\",\"username\":\"user\",\"identify_num\":\"0001\",\"online\":true,"
+            + "\"os\":\"Websocket\",\"status\":0,\"avatar\":\"\",\"vip_avatar\":\"\",\"bot\":false,\"is_vip\":false}";
+    private static final Map<String, String> BODIES = new HashMap<>();
+
+    static {
+        BODIES.put("added_reaction", "{\"msg_id\":\"67d8b6a0-1f5d-4b4c-9e3c-7d1c5c7f2a10\",\"user_id\":\"1000000001\","
+                + "\"channel_id\":\"3000000000\",\"emoji\":{\"id\":\"[#128077;]\",\"name\":\"[#128077;]\"}}");
+        BODIES.put("updated_guild_member", "{\"user_id\":\"1000000001\",\"nickname\":\"member\"}");
+        BODIES.put("guild_member_online", "{\"user_id\":\"1000000001\",\"event_time\":1672531200000,\"guilds\":[\"2000000000\"]}");
+        BODIES.put("message_btn_click", "{\"msg_id\":\"67d8b6a0-1f5d-4b4c-9e3c-7d1c5c7f2a10\",\"user_id\":\"1000000001\","
+                + "\"value\":\"ok\",\"target_id\":\"3000000000\",\"user_info\":" + USER + "}");
+    }
+
+    // "9" is a KMarkdown message in a guild channel, the others are system events
+    @Param({"9", "added_reaction", "updated_guild_member", "guild_member_online", "message_btn_click"})
+    public String type;
+
+    private KookStubServer stub;
+    private KBCClient client;
+    private EventFactory.EventKind kind;
+    private JsonObject object;
+    private JsonObject body;
+    private long msgTimeStamp;
+
+    @Setup
+    public void setup() throws IOException {
+        stub = new KookStubServer().start();
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("api-base-url", stub.getBaseURL());
+        // nothing should leave this process
+        config.set("check-update", false);
+        config.set("capture-file", "");
+        config.set("event-journal", false);
+        config.set("botmarket-uuid", "");
+        CoreImpl core = new CoreImpl(NOPLogger.NOP_LOGGER);
+        JKook.setCore(core);
+        client = new KBCClient(core, config, null, "stub");
+        client.start();
+
+        object = JsonParser.parseString(frameData(type)).getAsJsonObject();
+        msgTimeStamp = object.get("msg_timestamp").getAsLong();
+        JsonElement rawBody = object.getAsJsonObject("extra").get("body");
+        body = rawBody != null ? rawBody.getAsJsonObject() : null;
+        kind = EventFactory.getKind(type);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.shutdown();
+        stub.close();
+    }
+
+    private static String frameData(String type) {
+        String common = "\"target_id\":\"" + (type.equals("9") ? "3000000000" : "2000000000") + "\",\"author_id\":\"1000000001\","
+                + "\"msg_id\":\"67d8b6a0-1f5d-4b4c-9e3c-7d1c5c7f2a10\",\"msg_timestamp\":1672531200000,\"nonce\":\"\",";
+        if (type.equals("9")) {
+            return "{\"channel_type\":\"GROUP\",\"type\":9," + common + "\"content\":\"hello\","
+                    + "\"extra\":{\"type\":9,\"guild_id\":\"2000000000\",\"channel_name\":\"stub\",\"mention\":[],"
+                    + "\"mention_all\":false,\"mention_roles\":[],\"mention_here\":false,\"author\":" + USER + "}}";
+        }
+        return "{\"channel_type\":\"GROUP\",\"type\":255," + common + "\"content\":\"[系统消息]\","
+                + "\"extra\":{\"type\":\"" + type + "\",\"body\":" + BODIES.get(type) + "}}";
+    }
+
+    @Benchmark
+    public EventFactory.EventKind classify() {
+        return EventFactory.getKind(type);
+    }
+
+    @Benchmark
+    public Object classifyOld() {
+        Integer messageType;
+        try {
+            messageType = Integer.parseInt(type);
+        } catch (NumberFormatException e) {
+            messageType = null;
+        }
+        return messageType != null ? messageType : EventType.value(type);
+    }
+
+    @Benchmark
+    public Event decode() {
+        return kind.getDecoder().decode(client, object, body, msgTimeStamp);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// The events appended to and completed in the journal per millisecond, by one receiving thread.
+// inFlight is the count of the events appended but not completed yet, like the ones waiting in the event queue.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventJournalBenchmark {
+    @Param({"1", "256"})
+    public int inFlight;
+
+    private File directory;
+    private EventJournal journal;
+    private Frame[] window;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("kookbc-journal").toFile();
+        journal = new EventJournal(NOPLogger.NOP_LOGGER, directory, 64 * 1024 * 1024, 4);
+        JsonObject data = JsonParser.parseString(FrameDecoderBenchmark.MESSAGE_FRAME).getAsJsonObject().getAsJsonObject("d");
+        window = new Frame[inFlight];
+        for (int i = 0; i < inFlight; i++) {
+            window[i] = new Frame(0, i + 1, data);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    public void appendAndComplete() throws IOException {
+        Frame frame = window[next];
+        if (frame.getJournalId() > 0) {
+            journal.complete(frame); // the oldest event is handled now
+        }
+        journal.append(frame);
+        next = next + 1 == window.length ? 0 : next + 1;
+    }
+}
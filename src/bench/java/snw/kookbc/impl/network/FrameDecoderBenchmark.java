@@ -0,0 +1,108 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import snw.kookbc.util.Util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+// FrameDecoder against the old path (inflate into a byte array, make a String, then JsonParser).
+// Run with "-prof gc" to see the allocation per frame.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameDecoderBenchmark {
+    // a KMarkdown message in a guild channel, as the gateway sends it
+    static final String MESSAGE_FRAME = "{\"s\":0,\"sn\":1,\"d\":{\"channel_type\":\"GROUP\",\"type\":9,"
+            + "\"target_id\":\"3000000001\",\"author_id\":\"1000000001\",\"content\":\"hello (met)1000000000(met)\","
+            + "\"msg_id\":\"67d8b6a0-1f5d-4b4c-9e3c-7d1c5c7f2a10\",\"msg_timestamp\":1672531200000,\"nonce\":\"\","
+            + "\"extra\":{\"type\":9,\"guild_id\":\"2000000000\",\"channel_name\":\"general\",\"mention\":[\"1000000000\"],"
+            + "\"mention_all\":false,\"mention_roles\":[],\"mention_here\":false,\"nav_channels\":[],\"code\":\"\","
+            + "\"author\":{\"id\":\"1000000001\",\"username\":\"user\",\"identify_num\":\"0001\",\"online\":true,"
+            + "\"os\":\"Websocket\",\"status\":1,\"avatar\":\"https://img.kookapp.cn/avatars/a.png\","
+            + "\"vip_avatar\":\"https://img.kookapp.cn/avatars/a.png\",\"nickname\":\"user\",\"roles\":[1,2],"
+            + "\"is_vip\":false,\"bot\":false,\"mobile_verified\":true},"
+            + "\"kmarkdown\":{\"raw_content\":\"hello @bot\",\"mention_part\":[{\"id\":\"1000000000\","
+            + "\"username\":\"bot\",\"full_name\":\"bot#0001\",\"avatar\":\"https://img.kookapp.cn/avatars/b.png\"}],"
+            + "\"mention_role_part\":[]}}}}";
+
+    private FrameDecoder decoder;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() {
+        decoder = new FrameDecoder();
+        compressed = compress(MESSAGE_FRAME.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        decoder.close();
+    }
+
+    @Benchmark
+    public Frame compressed() throws IOException {
+        return decoder.decodeDeflate(compressed, 0, compressed.length);
+    }
+
+    @Benchmark
+    public Frame compressedOld() throws IOException, DataFormatException {
+        return parse(new String(Util.decompressDeflate(compressed), StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Frame text() throws IOException {
+        return decoder.decode(MESSAGE_FRAME);
+    }
+
+    @Benchmark
+    public Frame textOld() {
+        return parse(MESSAGE_FRAME);
+    }
+
+    private static Frame parse(String text) {
+        JsonObject object = JsonParser.parseString(text).getAsJsonObject();
+        return new Frame(object.get("s").getAsInt(), object.get("sn") != null ? object.get("sn").getAsInt() : -1, object.getAsJsonObject("d"));
+    }
+
+    // the gateway uses zlib (deflate with the header), so does the Deflater by default
+    static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] result = new byte[data.length + 64];
+            int length = deflater.deflate(result);
+            return Arrays.copyOf(result, length);
+        } finally {
+            deflater.end();
+        }
+    }
+}
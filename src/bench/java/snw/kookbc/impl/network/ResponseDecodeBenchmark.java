@@ -0,0 +1,77 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import org.openjdk.jmh.annotations.*;
+import snw.kookbc.impl.network.exceptions.BadResponseException;
+
+import java.util.concurrent.TimeUnit;
+
+// Decoding the data of an API response in one pass, against the old path which parsed the body twice
+//  (once to check the code, once more to get the data).
+// items is the count of the users in the page, like the response of guild/user-list.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseDecodeBenchmark {
+    private static final TypeAdapter<JsonObject> JSON_OBJECT = JsonBody.GSON.getAdapter(JsonObject.class);
+
+    @Param({"1", "50"})
+    public int items;
+
+    private String raw;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder("{\"code\":0,\"message\":\"操作成功\",\"data\":{\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i != 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":\"").append(1000000000L + i).append("\",\"username\":\"user").append(i)
+                    .append("\",\"identify_num\":\"0001\",\"online\":true,\"os\":\"Websocket\",\"status\":1,")
+                    .append("\"avatar\":\"https://img.kookapp.cn/avatars/a.png\",\"vip_avatar\":\"https://img.kookapp.cn/avatars/a.png\",")
+                    .append("\"banner\":\"\",\"nickname\":\"user").append(i).append("\",\"roles\":[1,2],")
+                    .append("\"is_vip\":false,\"bot\":false,\"mobile_verified\":true,\"joined_at\":1672531200000,\"active_time\":1672531200000}");
+        }
+        builder.append("],\"meta\":{\"page\":1,\"page_total\":1,\"page_size\":50,\"total\":").append(items)
+                .append("},\"sort\":{\"id\":1}}}");
+        raw = builder.toString();
+    }
+
+    @Benchmark
+    public JsonObject singlePass() {
+        return NetworkClient.decodeData(raw, JSON_OBJECT);
+    }
+
+    @Benchmark
+    public JsonObject parseTwice() {
+        JsonObject object = JsonParser.parseString(raw).getAsJsonObject();
+        if (object.get("code").getAsInt() != 0) {
+            throw new BadResponseException(object.get("code").getAsInt(), object.get("message").getAsString());
+        }
+        return JsonParser.parseString(raw).getAsJsonObject().getAsJsonObject("data");
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.stub;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.freeutils.httpserver.HTTPServer;
+import snw.kookbc.util.PrefixThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// An in-process stand-in of the KOOK gateway and HTTP API, for end-to-end benchmarks without the network.
+// Point a client at it by setting "api-base-url" in kbc.yml to getBaseURL(),
+//  the gateway/index route then returns the URL of the local gateway.
+// Only the routes used by the client on startup have realistic answers, other routes return an empty object,
+//  use setResponse to script more.
+public class KookStubServer implements Closeable {
+    private final int httpPort;
+    private final int gatewayPort;
+    private final Map<String, JsonElement> responses = new ConcurrentHashMap<>();
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final Stats stats = new Stats();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new PrefixThreadFactory("Stub Event Generator #"));
+    private HTTPServer http;
+    private StubGateway gateway;
+    private ScheduledFuture<?> generator;
+    private volatile long latency;
+    private volatile long helloDelay;
+    private volatile boolean respondPing = true;
+    private volatile boolean compress = true;
+    private volatile int rateLimit = 120;
+    private volatile int rateLimitReset = 1;
+    private volatile int channelCount = 1;
+    private final AtomicLong nextMessage = new AtomicLong();
+
+    // use 0 to pick free ports
+    public KookStubServer(int httpPort, int gatewayPort) {
+        this.httpPort = httpPort;
+        this.gatewayPort = gatewayPort;
+    }
+
+    public KookStubServer() {
+        this(0, 0);
+    }
+
+    public synchronized KookStubServer start() throws IOException {
+        if (http != null) {
+            throw new IllegalStateException("The stub server has already started");
+        }
+        gateway = new StubGateway(this, gatewayPort);
+        gateway.start();
+        int port = httpPort == 0 ? freePort() : httpPort;
+        http = new HTTPServer(port);
+        http.setExecutor(Executors.newCachedThreadPool(new PrefixThreadFactory("Stub HTTP Thread #")));
+        http.getVirtualHost(null).addContext("/api", this::serve, "GET", "POST");
+        http.start();
+        return this;
+    }
+
+    public String getBaseURL() {
+        return "http://127.0.0.1:" + http.getPort() + "/api";
+    }
+
+    public String getGatewayURL() {
+        return "ws://127.0.0.1:" + gateway.getPort() + "/gateway?compress=" + (compress ? 1 : 0);
+    }
+
+    // the delay of every HTTP response and PONG
+    public KookStubServer setLatency(long millis) {
+        this.latency = millis;
+        return this;
+    }
+
+    // the delay between the handshake and the HELLO signal
+    public KookStubServer setHelloDelay(long millis) {
+        this.helloDelay = millis;
+        return this;
+    }
+
+    // false to let the heartbeat of the client time out
+    public KookStubServer setRespondPing(boolean respondPing) {
+        this.respondPing = respondPing;
+        return this;
+    }
+
+    // false to send the signals as text frames instead of zlib compressed binary frames
+    public KookStubServer setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    // the requests allowed per route in every window of resetSeconds, the 429 response is returned beyond that
+    public KookStubServer setRateLimit(int limit, int resetSeconds) {
+        this.rateLimit = limit;
+        this.rateLimitReset = Math.max(1, resetSeconds);
+        windows.clear();
+        return this;
+    }
+
+    // the synthetic events are spread over this count of channels
+    public KookStubServer setChannelCount(int channelCount) {
+        this.channelCount = Math.max(1, channelCount);
+        return this;
+    }
+
+    // route example: "/v3/user/me", the data object of the response is replaced
+    public KookStubServer setResponse(String route, JsonElement data) {
+        responses.put(route, data);
+        return this;
+    }
+
+    // sends the synthetic message events at the provided rate until stopEvents is called
+    public synchronized void startEvents(int perSecond) {
+        stopEvents();
+        long period = Math.max(1, TimeUnit.SECONDS.toMicros(1) / Math.max(1, perSecond));
+        generator = scheduler.scheduleAtFixedRate(() -> sendEvents(1), 0, period, TimeUnit.MICROSECONDS);
+    }
+
+    public synchronized void stopEvents() {
+        if (generator != null) {
+            generator.cancel(false);
+            generator = null;
+        }
+    }
+
+    // sends the synthetic message events now, on the calling thread
+    public void sendEvents(int count) {
+        for (int i = 0; i < count; i++) {
+            long index = nextMessage.getAndIncrement();
+            gateway.broadcast(StubData.channelMessage(StubData.CHANNEL_ID_PREFIX + (index % channelCount), index));
+        }
+    }
+
+    // sends the RECONNECT signal to every client, they have to start over with a new session
+    public void reconnectAll() {
+        gateway.reconnectAll();
+    }
+
+    // closes every connection, the clients can resume their sessions
+    public void dropAll() {
+        gateway.dropAll();
+    }
+
+    public int getConnectionCount() {
+        return gateway.getConnectionCount();
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    long getLatency() {
+        return latency;
+    }
+
+    long getHelloDelay() {
+        return helloDelay;
+    }
+
+    boolean isRespondPing() {
+        return respondPing;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        stopEvents();
+        scheduler.shutdownNow();
+        if (http != null) {
+            http.stop();
+        }
+        if (gateway != null) {
+            gateway.close();
+        }
+    }
+
+    private int serve(HTTPServer.Request request, HTTPServer.Response response) throws IOException {
+        stats.requests.incrementAndGet();
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        String route = request.getPath().substring("/api".length());
+        Window window = windows.computeIfAbsent(route, k -> new Window());
+        JsonObject body = new JsonObject();
+        int status;
+        synchronized (window) {
+            long now = System.currentTimeMillis();
+            long resetMillis = TimeUnit.SECONDS.toMillis(rateLimitReset);
+            if (now - window.start >= resetMillis) {
+                window.start = now;
+                window.used = 0;
+            }
+            boolean allowed = window.used < rateLimit;
+            if (allowed) {
+                window.used++;
+            }
+            int reset = (int) ((window.start + resetMillis - now + 999) / 1000);
+            response.getHeaders().add("X-Rate-Limit-Limit", String.valueOf(rateLimit));
+            response.getHeaders().add("X-Rate-Limit-Remaining", String.valueOf(rateLimit - window.used));
+            response.getHeaders().add("X-Rate-Limit-Reset", String.valueOf(reset));
+            response.getHeaders().add("X-Rate-Limit-Bucket", route.startsWith("/") ? route.substring(1) : route);
+            status = allowed ? 200 : 429;
+        }
+        if (status == 429) {
+            stats.rateLimited.incrementAndGet();
+            body.addProperty("code", 429);
+            body.addProperty("message", "Too many requests");
+            body.add("data", new JsonObject());
+        } else {
+            body.addProperty("code", 0);
+            body.addProperty("message", "");
+            body.add("data", answer(route, request));
+        }
+        byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+        response.sendHeaders(status, content.length, -1L, null, "application/json; charset=utf-8", null);
+        OutputStream out = response.getBody();
+        if (out != null) {
+            out.write(content);
+        }
+        return 0;
+    }
+
+    private JsonElement answer(String route, HTTPServer.Request request) throws IOException {
+        JsonElement scripted = responses.get(route);
+        if (scripted != null) {
+            return scripted.deepCopy();
+        }
+        Map<String, String> params = request.getParams();
+        switch (route) {
+            case "/v3/gateway/index": {
+                JsonObject object = new JsonObject();
+                object.addProperty("url", getGatewayURL());
+                return object;
+            }
+            case "/v3/user/me":
+                return StubData.user(StubData.BOT_ID, true);
+            case "/v3/user/view":
+                return StubData.user(params.getOrDefault("user_id", StubData.USER_ID), false);
+            case "/v3/guild/view":
+                return StubData.guild(params.getOrDefault("guild_id", StubData.GUILD_ID));
+            case "/v3/channel/view":
+                return StubData.channel(params.getOrDefault("target_id", StubData.CHANNEL_ID_PREFIX + "0"));
+            case "/v3/message/create":
+            case "/v3/direct-message/create":
+                return StubData.messageCreated();
+            default:
+                return new JsonObject();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final class Window {
+        long start;
+        int used;
+    }
+
+    public static final class Stats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong rateLimited = new AtomicLong();
+        final AtomicLong connections = new AtomicLong();
+        final AtomicLong resumes = new AtomicLong();
+        final AtomicLong pings = new AtomicLong();
+        final AtomicLong eventsSent = new AtomicLong();
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getRateLimited() {
+            return rateLimited.get();
+        }
+
+        public long getConnections() {
+            return connections.get();
+        }
+
+        public long getResumes() {
+            return resumes.get();
+        }
+
+        public long getPings() {
+            return pings.get();
+        }
+
+        public long getEventsSent() {
+            return eventsSent.get();
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + getRequests() +
+                    ", rateLimited=" + getRateLimited() +
+                    ", connections=" + getConnections() +
+                    ", resumes=" + getResumes() +
+                    ", pings=" + getPings() +
+                    ", eventsSent=" + getEventsSent();
+        }
+    }
+}
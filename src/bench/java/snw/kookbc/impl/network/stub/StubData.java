@@ -0,0 +1,120 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.stub;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.UUID;
+
+// The synthetic objects answered by the stand-in server.
+// They only have the fields KookBC reads, the values are made up.
+final class StubData {
+    static final String BOT_ID = "1000000000";
+    static final String USER_ID = "1000000001";
+    static final String GUILD_ID = "2000000000";
+    static final String CHANNEL_ID_PREFIX = "300000000";
+
+    private StubData() {
+    }
+
+    static JsonObject user(String id, boolean bot) {
+        JsonObject object = new JsonObject();
+        object.addProperty("id", id);
+        object.addProperty("username", bot ? "StubBot" : "StubUser" + id);
+        object.addProperty("identify_num", "0001");
+        object.addProperty("online", false); // or the client will call the offline API before connecting
+        object.addProperty("os", "Websocket");
+        object.addProperty("status", 0);
+        object.addProperty("avatar", "");
+        object.addProperty("vip_avatar", "");
+        object.addProperty("bot", bot);
+        object.addProperty("is_vip", false);
+        return object;
+    }
+
+    static JsonObject guild(String id) {
+        JsonObject object = new JsonObject();
+        object.addProperty("id", id);
+        object.addProperty("name", "Stub Guild");
+        object.addProperty("topic", "");
+        object.addProperty("master_id", USER_ID);
+        object.addProperty("icon", "");
+        object.addProperty("notify_type", 1);
+        object.addProperty("region", "beijing");
+        object.addProperty("enable_open", false);
+        object.addProperty("open_id", "0");
+        object.addProperty("default_channel_id", CHANNEL_ID_PREFIX + "0");
+        object.addProperty("welcome_channel_id", "0");
+        return object;
+    }
+
+    static JsonObject channel(String id) {
+        JsonObject object = new JsonObject();
+        object.addProperty("id", id);
+        object.addProperty("name", "stub-" + id);
+        object.addProperty("user_id", USER_ID);
+        object.addProperty("guild_id", GUILD_ID);
+        object.addProperty("topic", "");
+        object.addProperty("is_category", false);
+        object.addProperty("parent_id", "");
+        object.addProperty("level", 0);
+        object.addProperty("slow_mode", 0);
+        object.addProperty("type", 1); // text
+        object.add("permission_overwrites", new JsonArray());
+        object.add("permission_users", new JsonArray());
+        object.addProperty("permission_sync", 1);
+        object.addProperty("has_password", false);
+        object.addProperty("limit_amount", 0);
+        return object;
+    }
+
+    // a KMarkdown message in the provided channel
+    static JsonObject channelMessage(String channelId, long index) {
+        JsonObject extra = new JsonObject();
+        extra.addProperty("type", 9);
+        extra.addProperty("guild_id", GUILD_ID);
+        extra.addProperty("channel_name", "stub-" + channelId);
+        extra.add("mention", new JsonArray());
+        extra.addProperty("mention_all", false);
+        extra.add("mention_roles", new JsonArray());
+        extra.addProperty("mention_here", false);
+        extra.add("author", user(USER_ID, false));
+
+        JsonObject object = new JsonObject();
+        object.addProperty("channel_type", "GROUP");
+        object.addProperty("type", 9);
+        object.addProperty("target_id", channelId);
+        object.addProperty("author_id", USER_ID);
+        object.addProperty("content", "stub message #" + index);
+        object.addProperty("msg_id", UUID.randomUUID().toString());
+        object.addProperty("msg_timestamp", System.currentTimeMillis());
+        object.addProperty("nonce", "");
+        object.add("extra", extra);
+        return object;
+    }
+
+    static JsonObject messageCreated() {
+        JsonObject object = new JsonObject();
+        object.addProperty("msg_id", UUID.randomUUID().toString());
+        object.addProperty("msg_timestamp", System.currentTimeMillis());
+        object.addProperty("nonce", "");
+        return object;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.stub;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+// A minimal RFC 6455 server speaking the KOOK gateway protocol.
+// Only what the client uses is implemented: no extensions, no fragmentation on write.
+final class StubGateway implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StubGateway.class);
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private final KookStubServer server;
+    private final ServerSocket socket;
+    private final Map<String, AtomicInteger> sessions = new ConcurrentHashMap<>(); // session id -> last SN
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final Thread acceptThread;
+    private volatile boolean closed;
+
+    StubGateway(KookStubServer server, int port) throws IOException {
+        this.server = server;
+        this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.acceptThread = new Thread(this::acceptLoop, "Stub Gateway Acceptor");
+        this.acceptThread.setDaemon(true);
+    }
+
+    void start() {
+        acceptThread.start();
+    }
+
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    int getConnectionCount() {
+        return connections.size();
+    }
+
+    // sends the event to every live connection
+    void broadcast(JsonObject data) {
+        for (Connection connection : connections) {
+            if (connection.live) {
+                connection.sendEvent(data);
+            }
+        }
+    }
+
+    // asks every client to reconnect, the sessions are forgotten as the real gateway does
+    void reconnectAll() {
+        for (Connection connection : connections) {
+            JsonObject d = new JsonObject();
+            d.addProperty("code", 41008);
+            d.addProperty("err", "Missing params");
+            JsonObject object = new JsonObject();
+            object.addProperty("s", 5);
+            object.add("d", d);
+            connection.send(object.toString());
+            if (connection.sessionId != null) {
+                sessions.remove(connection.sessionId);
+            }
+            connection.close();
+        }
+    }
+
+    // closes every connection without a close frame, the sessions can be resumed
+    void dropAll() {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+        dropAll();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket accepted = socket.accept();
+                accepted.setTcpNoDelay(true);
+                Connection connection = new Connection(accepted);
+                Thread thread = new Thread(connection, "Stub Gateway Connection #" + accepted.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Unable to accept the connection", e);
+                }
+            }
+        }
+    }
+
+    private final class Connection implements Runnable {
+        private final Socket socket;
+        private final Deflater deflater = new Deflater();
+        private InputStream in;
+        private OutputStream out;
+        private boolean compress;
+        private volatile String sessionId;
+        private volatile boolean live;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+                Map<String, String> query = handshake();
+                if (query == null) {
+                    return;
+                }
+                server.getStats().connections.incrementAndGet();
+                connections.add(this);
+                compress = !"0".equals(query.get("compress"));
+                sleep(server.getHelloDelay());
+                hello(query);
+                readLoop();
+            } catch (IOException ignored) {
+                // the client has gone, nothing to do
+            } finally {
+                connections.remove(this);
+                close();
+                deflater.end();
+            }
+        }
+
+        private void hello(Map<String, String> query) {
+            String resume = query.get("session_id");
+            JsonObject d = new JsonObject();
+            if ("1".equals(query.get("resume")) && resume != null) {
+                server.getStats().resumes.incrementAndGet();
+                if (!sessions.containsKey(resume)) {
+                    d.addProperty("code", 40106); // resume failed, the session is gone
+                    send(signal(1, d));
+                    close();
+                    return;
+                }
+                sessionId = resume;
+                d.addProperty("code", 0);
+                d.addProperty("session_id", resume);
+                send(signal(1, d));
+                JsonObject ack = new JsonObject();
+                ack.addProperty("session_id", resume);
+                send(signal(6, ack));
+            } else {
+                sessionId = UUID.randomUUID().toString();
+                sessions.put(sessionId, new AtomicInteger());
+                d.addProperty("code", 0);
+                d.addProperty("session_id", sessionId);
+                send(signal(1, d));
+            }
+            live = true;
+        }
+
+        void sendEvent(JsonObject data) {
+            AtomicInteger sn = sessionId != null ? sessions.get(sessionId) : null;
+            if (sn == null) {
+                return;
+            }
+            JsonObject object = new JsonObject();
+            object.addProperty("s", 0);
+            object.addProperty("sn", sn.updateAndGet(i -> i >= 65535 ? 1 : i + 1));
+            object.add("d", data);
+            if (send(object.toString())) {
+                server.getStats().eventsSent.incrementAndGet();
+            }
+        }
+
+        private void readLoop() throws IOException {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            while (!socket.isClosed()) {
+                int b0 = in.read();
+                int b1 = in.read();
+                if (b0 < 0 || b1 < 0) {
+                    return;
+                }
+                boolean fin = (b0 & 0x80) != 0;
+                int opcode = b0 & 0x0F;
+                long length = b1 & 0x7F;
+                if (length == 126) {
+                    length = (readByte() << 8) | readByte();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | readByte();
+                    }
+                }
+                byte[] mask = new byte[4];
+                if ((b1 & 0x80) != 0) {
+                    readFully(mask);
+                }
+                byte[] payload = new byte[(int) length];
+                readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+                switch (opcode) {
+                    case 0x8: // close
+                        writeFrame(0x8, payload);
+                        return;
+                    case 0x9: // ping
+                        writeFrame(0xA, payload);
+                        break;
+                    case 0xA: // pong
+                        break;
+                    default: // text or continuation, the client never sends binary
+                        message.write(payload);
+                        if (fin) {
+                            onText(new String(message.toByteArray(), StandardCharsets.UTF_8));
+                            message.reset();
+                        }
+                }
+            }
+        }
+
+        private void onText(String text) {
+            JsonObject object = JsonParser.parseString(text).getAsJsonObject();
+            if (object.get("s").getAsInt() == 2) {
+                server.getStats().pings.incrementAndGet();
+                if (server.isRespondPing()) {
+                    sleep(server.getLatency());
+                    send("{\"s\":3}");
+                }
+            } // RESUME (4) is answered by the HELLO of the resumed connection
+        }
+
+        synchronized boolean send(String text) {
+            try {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                if (compress) {
+                    writeFrame(0x2, deflate(bytes));
+                } else {
+                    writeFrame(0x1, bytes);
+                }
+                return true;
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+        }
+
+        private byte[] deflate(byte[] bytes) {
+            deflater.reset();
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                result.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return result.toByteArray();
+        }
+
+        private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else if (payload.length < 65536) {
+                out.write(126);
+                out.write(payload.length >>> 8);
+                out.write(payload.length);
+            } else {
+                out.write(127);
+                for (int i = 7; i >= 0; i--) {
+                    out.write(i >= 4 ? 0 : payload.length >>> (i * 8));
+                }
+            }
+            out.write(payload);
+            out.flush();
+        }
+
+        // reads the upgrade request and answers it, returns the query parameters
+        private Map<String, String> handshake() throws IOException {
+            String requestLine = readLine();
+            if (requestLine == null) {
+                return null;
+            }
+            String key = null;
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                    key = line.substring(colon + 1).trim();
+                }
+            }
+            if (key == null) {
+                out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                return null;
+            }
+            String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Accept: " + accept(key) + "\r\n\r\n";
+            out.write(response.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String[] parts = requestLine.split(" ");
+            return parts.length > 1 ? query(parts[1]) : Collections.emptyMap();
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder builder = new StringBuilder();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    int length = builder.length();
+                    if (length > 0 && builder.charAt(length - 1) == '\r') {
+                        builder.setLength(length - 1);
+                    }
+                    return builder.toString();
+                }
+                builder.append((char) b);
+            }
+            return null;
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        private void readFully(byte[] bytes) throws IOException {
+            new DataInputStream(in).readFully(bytes);
+        }
+
+        void close() {
+            live = false;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String signal(int s, JsonObject d) {
+        JsonObject object = new JsonObject();
+        object.addProperty("s", s);
+        object.add("d", d);
+        return object.toString();
+    }
+
+    private static String accept(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // every JVM has SHA-1
+        }
+    }
+
+    private static Map<String, String> query(String target) throws UnsupportedEncodingException {
+        Map<String, String> result = new HashMap<>();
+        String raw = URI.create(target).getRawQuery();
+        if (raw == null) {
+            return result;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                result.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return result;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
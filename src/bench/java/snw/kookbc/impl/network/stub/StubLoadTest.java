@@ -0,0 +1,181 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.stub;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import snw.jkook.JKook;
+import snw.jkook.config.file.YamlConfiguration;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.exceptions.BadResponseException;
+import snw.kookbc.impl.network.exceptions.TooFastException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+// Runs a client against the KookStubServer and reports the connect time, the reconnect and resume time,
+//  the HTTP requests per second, the behaviour under the rate limit and the event throughput.
+// Usage: mvn -Pbench test-compile exec:java -Dexec.mainClass=snw.kookbc.impl.network.stub.StubLoadTest -Dexec.args="[threads] [seconds] [events] [latency ms]"
+public class StubLoadTest {
+    private static final long WAIT_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    private final Logger logger;
+    private final KookStubServer stub;
+    private final KBCClient client;
+
+    public StubLoadTest(Logger logger, KookStubServer stub, KBCClient client) {
+        this.logger = logger;
+        this.stub = stub;
+        this.client = client;
+    }
+
+    public long connect() {
+        long start = System.nanoTime();
+        client.start();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // the RECONNECT signal, the client has to get a new session
+    public long reconnect() {
+        long connections = stub.getStats().getConnections();
+        long start = System.nanoTime();
+        stub.reconnectAll();
+        await(() -> stub.getStats().getConnections() > connections && client.getConnector().isConnected());
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // a dropped connection, the client should resume the session
+    public long resume() {
+        long resumes = stub.getStats().getResumes();
+        long start = System.nanoTime();
+        stub.dropAll();
+        await(() -> stub.getStats().getResumes() > resumes && client.getConnector().isConnected());
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // calls the API from the provided count of threads, returns {ok, too fast (client side), 429 (server side), other failures}
+    public long[] hammer(int threads, long millis) throws InterruptedException {
+        AtomicLong ok = new AtomicLong();
+        AtomicLong tooFast = new AtomicLong();
+        AtomicLong limited = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            String url = HttpAPIRoute.USER_WHO.toFullURL() + "?user_id=" + StubData.USER_ID;
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    try {
+                        client.getNetworkClient().get(url);
+                        ok.incrementAndGet();
+                    } catch (TooFastException e) {
+                        tooFast.incrementAndGet();
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    } catch (BadResponseException e) {
+                        (e.getCode() == 429 ? limited : failed).incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }, "Load Test Worker #" + i);
+            thread.start();
+            workers.add(thread);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new long[]{ok.get(), tooFast.get(), limited.get(), failed.get()};
+    }
+
+    // sends the events through the gateway, waits until they are handled
+    public long events(int count) {
+        client.getEventLatency().reset();
+        long start = System.nanoTime();
+        stub.sendEvents(count);
+        await(() -> client.getEventLatency().getCount() >= count);
+        return System.nanoTime() - start;
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + WAIT_TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out waiting for the client");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    public void run(int threads, long seconds, int events) throws InterruptedException {
+        logger.info("Connect: {} ms", connect());
+        logger.info("Reconnect (new session): {} ms", reconnect());
+        logger.info("Resume: {} ms", resume());
+
+        stub.setRateLimit(Integer.MAX_VALUE, 1);
+        long millis = TimeUnit.SECONDS.toMillis(seconds);
+        long[] result = hammer(threads, millis);
+        logger.info("Throughput: {} requests/s with {} thread(s), failed: {}", result[0] * 1000 / millis, threads, result[3]);
+
+        stub.setRateLimit(20, 1);
+        result = hammer(threads, millis);
+        logger.info("Rate limited (20 per second): ok={}, rejected by client={}, 429 from server={}, failed={}",
+                result[0], result[1], result[2], result[3]);
+        logger.info("Buckets: {}", client.getNetworkClient().getBuckets());
+        stub.setRateLimit(Integer.MAX_VALUE, 1);
+
+        long nanos = events(events);
+        logger.info("Events: {} in {} ms, {} events/s, latency: {}", events, TimeUnit.NANOSECONDS.toMillis(nanos),
+                nanos == 0 ? 0 : events * 1_000_000_000L / nanos, client.getEventLatency());
+        logger.info("Stub: {}", stub.getStats());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Logger logger = LoggerFactory.getLogger(StubLoadTest.class);
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        int events = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        long latency = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        try (KookStubServer stub = new KookStubServer().setLatency(latency).start()) {
+            YamlConfiguration config = new YamlConfiguration();
+            config.set("api-base-url", stub.getBaseURL());
+            // nothing should leave this process
+            config.set("check-update", false);
+            config.set("capture-file", "");
+            config.set("event-journal", false);
+            config.set("botmarket-uuid", "");
+
+            CoreImpl core = new CoreImpl(logger);
+            JKook.setCore(core);
+            KBCClient client = new KBCClient(core, config, null, "stub");
+            try {
+                new StubLoadTest(logger, stub, client).run(threads, seconds, events);
+            } finally {
+                client.shutdown();
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -155,7 +155,10 @@ public class CoreImpl implements Core {
         this.pluginManager = new SimplePluginManager(client);
         this.client.loadAllPlugins();
         this.unsafe = new UnsafeImpl(client);
-        this.scheduler = new SchedulerImpl(client);
+        SharedResources sharedResources = client.getSharedResources();
+        this.scheduler = sharedResources != null
+                ? new SchedulerImpl(client, sharedResources.getSchedulerPool())
+                : new SchedulerImpl(client);
         this.eventManager = new EventManagerImpl(client);
         this.commandManager = new CommandManagerImpl(client);
         this.init = true;
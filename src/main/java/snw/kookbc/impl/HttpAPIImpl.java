@@ -19,7 +19,6 @@
 package snw.kookbc.impl;
 
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.Request;
@@ -97,7 +96,7 @@ public class HttpAPIImpl implements HttpAPI {
                 .post(body)
                 .addHeader("Authorization", client.getNetworkClient().getTokenWithPrefix())
                 .build();
-        return JsonParser.parseString(client.getNetworkClient().call(request)).getAsJsonObject().getAsJsonObject("data").get("url").getAsString();
+        return client.getNetworkClient().<JsonObject>call(request, JsonObject.class).get("url").getAsString();
     }
 
     @Override
@@ -111,7 +110,7 @@ public class HttpAPIImpl implements HttpAPI {
                 .post(requestBody)
                 .addHeader("Authorization", client.getNetworkClient().getTokenWithPrefix())
                 .build();
-        return JsonParser.parseString(client.getNetworkClient().call(request)).getAsJsonObject().getAsJsonObject("data").get("url").getAsString();
+        return client.getNetworkClient().<JsonObject>call(request, JsonObject.class).get("url").getAsString();
     }
 
     @Override
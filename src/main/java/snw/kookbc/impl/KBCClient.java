@@ -18,6 +18,7 @@
 
 package snw.kookbc.impl;
 
+import org.jetbrains.annotations.Nullable;
 import snw.jkook.Core;
 import snw.jkook.command.CommandExecutor;
 import snw.jkook.command.ConsoleCommandSender;
@@ -36,16 +37,26 @@ import snw.kookbc.impl.console.Console;
 import snw.kookbc.impl.entity.builder.EntityBuilder;
 import snw.kookbc.impl.entity.builder.EntityUpdater;
 import snw.kookbc.impl.entity.builder.MessageBuilder;
+import snw.kookbc.impl.network.Bucket;
 import snw.kookbc.impl.network.Connector;
+import snw.kookbc.impl.network.EventJournal;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.FrameDecodeStage;
 import snw.kookbc.impl.network.HttpAPIRoute;
+import snw.kookbc.impl.network.ListenerFactory;
+import snw.kookbc.impl.network.ListenerImpl;
 import snw.kookbc.impl.network.NetworkClient;
 import snw.kookbc.impl.network.Session;
+import snw.kookbc.impl.network.capture.FrameCapture;
 import snw.kookbc.impl.plugin.InternalPlugin;
 import snw.kookbc.impl.plugin.PluginMixinConfigManager;
 import snw.kookbc.impl.scheduler.SchedulerImpl;
 import snw.kookbc.impl.storage.EntityStorage;
 import snw.kookbc.impl.tasks.BotMarketPingThread;
 import snw.kookbc.impl.tasks.UpdateChecker;
+import snw.kookbc.util.LatencyHistogram;
+import snw.kookbc.util.PartitionedExecutor;
+import snw.kookbc.util.SerialExecutor;
 import snw.kookbc.util.Util;
 
 import java.io.File;
@@ -69,18 +80,30 @@ public class KBCClient {
     private final File pluginsFolder;
     private final Session session = new Session(null);
     private final InternalPlugin internalPlugin;
+    private final SharedResources sharedResources; // null if nothing is shared
     protected final ExecutorService eventExecutor;
+    protected final PartitionedExecutor eventLanes; // null if the events are dispatched on the event executor directly
     protected Connector connector;
+    protected EventJournal eventJournal; // null if disabled
+    protected final FrameCapture frameCapture; // null if disabled
+    private final LatencyHistogram eventLatency = new LatencyHistogram();
     protected List<Plugin> plugins;
     protected PluginMixinConfigManager pluginMixinConfigManager;
 
     public KBCClient(CoreImpl core, ConfigurationSection config, File pluginsFolder, String token) {
+        this(core, config, pluginsFolder, token, null);
+    }
+
+    // Use this if you are running multiple bots in the same JVM, the clients constructed with the same
+    //  SharedResources object will handle their events on the shared threads.
+    public KBCClient(CoreImpl core, ConfigurationSection config, File pluginsFolder, String token, @Nullable SharedResources sharedResources) {
         if (pluginsFolder != null) {
             Validate.isTrue(pluginsFolder.isDirectory(), "The provided pluginsFolder object is not a directory.");
         }
         this.core = core;
         this.config = config;
         this.pluginsFolder = pluginsFolder;
+        this.sharedResources = sharedResources;
         try {
             if (Util.isStartByLaunch()) {
                 this.pluginMixinConfigManager = new PluginMixinConfigManager();
@@ -89,13 +112,48 @@ public class KBCClient {
             throw new RuntimeException(e);
         }
         this.core.init(this, new HttpAPIImpl(this));
-        this.networkClient = new NetworkClient(this, token);
+        this.frameCapture = createFrameCapture();
+        this.networkClient = createNetworkClient(token);
         this.storage = new EntityStorage(this);
         this.entityBuilder = new EntityBuilder(this);
         this.msgBuilder = new MessageBuilder(this);
         this.entityUpdater = new EntityUpdater(this);
         this.internalPlugin = new InternalPlugin(this);
-        this.eventExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "Event Executor"));
+        this.eventExecutor = createEventExecutor(sharedResources);
+        int laneCount = config.getInt("event-lanes", 1);
+        if (laneCount > 1) {
+            this.eventLanes = sharedResources != null
+                    ? new PartitionedExecutor(laneCount, sharedResources.getEventPool(), sharedResources.getBatchSize())
+                    : new PartitionedExecutor(laneCount, "Event Lane #");
+        } else {
+            this.eventLanes = null;
+        }
+    }
+
+    protected NetworkClient createNetworkClient(String token) {
+        return new NetworkClient(this, token);
+    }
+
+    private FrameCapture createFrameCapture() {
+        String path = config.getString("capture-file", "");
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        try {
+            core.getLogger().warn("Capturing the payloads from remote to {}, it may contain sensitive data.", path);
+            return new FrameCapture(new File(path));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to create the capture file", e);
+        }
+    }
+
+    // Create the executor that puts the events in order. It must run the tasks one by one.
+    // Called in the constructor, so don't use the fields of the subclasses here.
+    protected ExecutorService createEventExecutor(@Nullable SharedResources sharedResources) {
+        if (sharedResources != null) {
+            return new SerialExecutor(sharedResources.getEventPool(), sharedResources.getBatchSize());
+        }
+        return Executors.newSingleThreadExecutor(r -> new Thread(r, "Event Executor"));
     }
 
     // The result of this method can prevent the users to execute the console command,
@@ -116,6 +174,10 @@ public class KBCClient {
         };
     }
 
+    public @Nullable SharedResources getSharedResources() {
+        return sharedResources;
+    }
+
     public ConfigurationSection getConfig() {
         return config;
     }
@@ -146,6 +208,7 @@ public class KBCClient {
         registerInternal();
         enablePlugins(plugins);
         getCore().getLogger().debug("Loading all the plugins from plugins folder");
+        startEventJournal();
         getCore().getLogger().debug("Starting Network");
         startNetwork();
         finishStart();
@@ -156,6 +219,30 @@ public class KBCClient {
         }
     }
 
+    // open the journal and replay the events which were not processed in the last run.
+    protected void startEventJournal() {
+        if (!getConfig().getBoolean("event-journal", false) || pluginsFolder == null) {
+            return;
+        }
+        try {
+            eventJournal = new EventJournal(
+                    getCore().getLogger(),
+                    new File(pluginsFolder, "journal"),
+                    getConfig().getInt("event-journal-segment-size", 16) * 1024 * 1024,
+                    getConfig().getInt("event-journal-max-segments", 8)
+            );
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open the event journal", e);
+        }
+        long interval = Math.max(100L, getConfig().getLong("event-journal-flush-interval", 1000L));
+        getCore().getScheduler().runTaskTimer(getInternalPlugin(), eventJournal::flush, interval, interval);
+        List<Frame> recovered = eventJournal.takeRecovered();
+        if (!recovered.isEmpty()) {
+            getCore().getLogger().info("Replaying {} event(s) from the journal", recovered.size());
+            ((ListenerImpl) ListenerFactory.getListener(this)).replay(recovered);
+        }
+    }
+
     protected List<Plugin> loadAllPlugins() {
         if (pluginsFolder == null) {
             return Collections.emptyList(); // If you just want to use JKook API?
@@ -220,7 +307,9 @@ public class KBCClient {
     }
 
     protected void startNetwork() {
-        connector = new Connector(this);
+        connector = sharedResources != null
+                ? new Connector(this, sharedResources.getConnectorExecutor())
+                : new Connector(this);
         connector.start();
     }
 
@@ -268,6 +357,24 @@ public class KBCClient {
 
         shutdownNetwork();
         eventExecutor.shutdown();
+        if (eventLanes != null) {
+            eventLanes.shutdown();
+        }
+        if (frameCapture != null) {
+            try {
+                frameCapture.close();
+            } catch (IOException e) {
+                getCore().getLogger().warn("Unable to close the capture file", e);
+            }
+        }
+        if (eventJournal != null) {
+            // the events still in the executors are not completed, so they will be replayed in the next run
+            try {
+                eventJournal.close();
+            } catch (IOException e) {
+                getCore().getLogger().warn("Unable to close the event journal", e);
+            }
+        }
         getCore().getLogger().info("Stopping core");
         getCore().getLogger().info("Stopping scheduler (If the application got into infinite loop, please kill this process!)");
         ((SchedulerImpl) getCore().getScheduler()).shutdown();
@@ -316,6 +423,29 @@ public class KBCClient {
         return eventExecutor;
     }
 
+    // The PING/PONG round-trip time of the WebSocket gateway.
+    // Returns null if the network is not started, or this client is not using WebSocket.
+    public LatencyHistogram getGatewayLatency() {
+        return connector != null ? connector.getLatency() : null;
+    }
+
+    public PartitionedExecutor getEventLanes() {
+        return eventLanes;
+    }
+
+    public EventJournal getEventJournal() {
+        return eventJournal;
+    }
+
+    public FrameCapture getFrameCapture() {
+        return frameCapture;
+    }
+
+    // the time from decoding an event to the end of its handling
+    public LatencyHistogram getEventLatency() {
+        return eventLatency;
+    }
+
     public PluginMixinConfigManager getPluginMixinConfigManager() {
         return pluginMixinConfigManager;
     }
@@ -324,6 +454,52 @@ public class KBCClient {
         registerStopCommand();
         registerHelpCommand();
         registerPluginsCommand();
+        registerStatusCommand();
+    }
+
+    protected void registerStatusCommand() {
+        new JKookCommand("status")
+                .setDescription("获取此 " + SharedConstants.IMPL_NAME + " 实例的网络与事件处理状态。")
+                .setExecutor(wrapConsoleCmd((args) -> getStatus().forEach(getCore().getLogger()::info)))
+                .register(getInternalPlugin());
+    }
+
+    // The lines printed by the "status" command.
+    protected List<String> getStatus() {
+        List<String> result = new LinkedList<>();
+        if (connector != null) {
+            result.add(String.format("WebSocket 状态: %s", connector.getState()));
+            result.add(String.format("网关延迟 (RTT): %s", connector.getLatency()));
+            FrameDecodeStage.Stats decodeStats = connector.getDecodeStats();
+            result.add(String.format("解码队列: 已入队 %d, 已丢弃事件 %d, 读取等待 %d, 控制信令等待 %d",
+                    decodeStats.getQueued(), decodeStats.getDropped(), decodeStats.getBlocked(), decodeStats.getControlBlocked()));
+        }
+        result.add(String.format("当前 SN: %d, 乱序缓冲区: %d/%d",
+                getSession().getSN().get(), getSession().getBuffer().size(), getSession().getBuffer().getCapacity()));
+        if (eventLanes != null) {
+            result.add(String.format("事件通道队列长度: %s", Arrays.toString(eventLanes.getQueueDepths())));
+        }
+        result.add(String.format("事件处理延迟: %s", eventLatency));
+        result.add(String.format("HTTP 连接池: 连接 %d (空闲 %d), 进行中的异步请求 %d, 排队 %d",
+                getNetworkClient().getHttpClient().connectionPool().connectionCount(),
+                getNetworkClient().getHttpClient().connectionPool().idleConnectionCount(),
+                getNetworkClient().getHttpClient().dispatcher().runningCallsCount(),
+                getNetworkClient().getHttpClient().dispatcher().queuedCallsCount()));
+        result.add(String.format("合并的重复 GET 请求: %d", getNetworkClient().getCoalescedGets()));
+        for (Bucket bucket : getNetworkClient().getBuckets()) {
+            if (bucket.getDelayed() > 0 || bucket.getRateLimited() > 0) {
+                long delayed = bucket.getDelayed();
+                result.add(String.format("限速桶 %s: 请求 %d, 等待 %d 次 (平均 %d ms, 最长 %d ms), 正在等待 %d, 429 响应 %d 次",
+                        bucket.getName(), bucket.getRequests(), delayed,
+                        delayed == 0 ? 0 : bucket.getTotalWaitMillis() / delayed, bucket.getMaxWaitMillis(),
+                        bucket.getWaiting(), bucket.getRateLimited()));
+            }
+        }
+        if (eventJournal != null) {
+            result.add(String.format("事件日志: 段文件 %d, 未完成事件 %d, 已提交至 #%d",
+                    eventJournal.getSegmentCount(), eventJournal.getInFlightCount(), eventJournal.getCommitted()));
+        }
+        return result;
     }
 
     protected void registerStopCommand() {
@@ -393,7 +569,7 @@ public class KBCClient {
                                     getCore().getLogger().info(s);
                                 }
                             } else if (commandSender instanceof User) {
-                                helpList.removeIf(IT -> IT.startsWith("(/)stop:"));
+                                helpList.removeIf(IT -> IT.startsWith("(/)stop:") || IT.startsWith("(/)status:"));
 
                                 if (getConfig().getBoolean("allow-help-ad", true)) {
                                     helpList.add(
@@ -0,0 +1,94 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl;
+
+import snw.kookbc.util.PrefixThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// The resources that can be shared by the clients running in the same JVM.
+// Each client still handles its events in order, but it borrows the threads from here instead of creating its own,
+//  and gives them back after a batch of events, so a busy bot can't starve the others.
+// The scheduler tasks of the plugins and the WebSocket connectors of the clients run on shared threads too.
+// The owner of this object should call shutdown() after all the clients using it are stopped.
+public class SharedResources {
+    // the count of the events a client can handle before giving the thread to the next client
+    public static final int DEFAULT_BATCH_SIZE = 16;
+    public static final int DEFAULT_SCHEDULER_THREADS = 2;
+
+    private final ExecutorService eventPool;
+    private final int batchSize;
+    private final ScheduledExecutorService schedulerPool;
+    // One thread for the connectors of all the clients, a connector relies on running its state transitions
+    //  on a single thread. Only the non-blocking state transitions run on it,
+    //  the HTTP requests of a connector are asynchronous and just post their results back to it.
+    private final ScheduledExecutorService connectorExecutor;
+
+    public SharedResources(int eventThreads) {
+        this(eventThreads, DEFAULT_BATCH_SIZE);
+    }
+
+    public SharedResources(int eventThreads, int batchSize) {
+        this(eventThreads, batchSize, DEFAULT_SCHEDULER_THREADS);
+    }
+
+    public SharedResources(int eventThreads, int batchSize, int schedulerThreads) {
+        if (eventThreads < 1) {
+            throw new IllegalArgumentException("The count of event threads must be positive");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        if (schedulerThreads < 1) {
+            throw new IllegalArgumentException("The count of scheduler threads must be positive");
+        }
+        this.eventPool = Executors.newFixedThreadPool(eventThreads, new PrefixThreadFactory("Shared Event Thread #"));
+        this.batchSize = batchSize;
+        this.schedulerPool = Executors.newScheduledThreadPool(schedulerThreads, new PrefixThreadFactory("Shared Scheduler Thread #"));
+        this.connectorExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Shared Connector Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ExecutorService getEventPool() {
+        return eventPool;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public ScheduledExecutorService getSchedulerPool() {
+        return schedulerPool;
+    }
+
+    public ScheduledExecutorService getConnectorExecutor() {
+        return connectorExecutor;
+    }
+
+    public void shutdown() {
+        eventPool.shutdown();
+        schedulerPool.shutdown();
+        connectorExecutor.shutdownNow();
+    }
+}
@@ -23,6 +23,7 @@ import snw.jkook.entity.CustomEmoji;
 import snw.jkook.entity.Game;
 import snw.jkook.message.PrivateMessage;
 import snw.jkook.message.TextChannelMessage;
+import snw.jkook.message.component.BaseComponent;
 import snw.kookbc.impl.entity.CustomEmojiImpl;
 import snw.kookbc.impl.entity.GameImpl;
 import snw.kookbc.impl.message.PrivateMessageImpl;
@@ -40,12 +41,12 @@ public class UnsafeImpl implements Unsafe {
 
     @Override
     public TextChannelMessage getTextChannelMessage(String id) {
-        return new TextChannelMessageImpl(client, id, null, null, -1, null, null);
+        return new TextChannelMessageImpl(client, id, null, (BaseComponent) null, -1, null, null);
     }
 
     @Override
     public PrivateMessage getPrivateMessage(String id) {
-        return new PrivateMessageImpl(client, id, null, null, -1, null);
+        return new PrivateMessageImpl(client, id, null, (BaseComponent) null, -1, null);
     }
 
     @Override
@@ -20,7 +20,6 @@ package snw.kookbc.impl.entity;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.Request;
@@ -276,7 +275,7 @@ public class GuildImpl implements Guild {
                 .post(requestBody)
                 .addHeader("Authorization", client.getNetworkClient().getTokenWithPrefix())
                 .build();
-        JsonObject object = JsonParser.parseString(client.getNetworkClient().call(request)).getAsJsonObject().getAsJsonObject("data");
+        JsonObject object = client.getNetworkClient().call(request, JsonObject.class);
         CustomEmoji emoji = client.getEntityBuilder().buildEmoji(object);
         client.getStorage().addEmoji(emoji);
         return emoji;
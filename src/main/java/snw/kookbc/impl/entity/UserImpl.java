@@ -37,6 +37,7 @@ import snw.kookbc.impl.pageiter.UserJoinedVoiceChannelIterator;
 import snw.kookbc.util.MapBuilder;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class UserImpl implements User {
     private final KBCClient client;
@@ -161,18 +162,31 @@ public class UserImpl implements User {
 
     @Override
     public String sendPrivateMessage(BaseComponent component, PrivateMessage quote) {
+        return client.getNetworkClient().post(HttpAPIRoute.USER_CHAT_MESSAGE_CREATE.toFullURL(), buildMessageBody(component, quote)).get("msg_id").getAsString();
+    }
+
+    public CompletableFuture<String> sendPrivateMessageAsync(BaseComponent component) {
+        return sendPrivateMessageAsync(component, null);
+    }
+
+    // the non-blocking version of sendPrivateMessage, the result is the ID of the message
+    public CompletableFuture<String> sendPrivateMessageAsync(BaseComponent component, @Nullable PrivateMessage quote) {
+        return client.getNetworkClient().postAsync(HttpAPIRoute.USER_CHAT_MESSAGE_CREATE.toFullURL(), buildMessageBody(component, quote))
+                .thenApply(object -> object.get("msg_id").getAsString());
+    }
+
+    private Map<String, Object> buildMessageBody(BaseComponent component, @Nullable PrivateMessage quote) {
         Object[] serialize = MessageBuilder.serialize(component);
         int type = (int) serialize[0];
-        String json = (String) serialize[1];
+        Object content = serialize[1];
         MapBuilder builder = new MapBuilder()
                 .put("type", type)
                 .put("target_id", getId())
-                .put("content", json);
+                .put("content", content);
         if (quote != null) {
             builder.put("quote", quote.getId());
         }
-        Map<String, Object> body = builder.build();
-        return client.getNetworkClient().post(HttpAPIRoute.USER_CHAT_MESSAGE_CREATE.toFullURL(), body).get("msg_id").getAsString();
+        return builder.build();
     }
 
     @Override
@@ -0,0 +1,238 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.entity.builder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.gson.JsonArray;
+import snw.jkook.message.component.BaseComponent;
+import snw.jkook.message.component.card.CardComponent;
+import snw.jkook.message.component.card.MultipleCardComponent;
+import snw.kookbc.impl.network.JsonBody;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A card structure which is serialized once, with {{name}} placeholders in its text filled on each send.
+// Usage:
+//   CardTemplate template = CardTemplate.compile(new CardBuilder()...addModule(new SectionModule(new PlainTextElement("Score: {{score}}"), null, null))...build());
+//   channel.sendComponent(template.fill("score", 42));
+// The serialized card is kept as segments which are already escaped for the request body,
+//  sending a filled template only escapes the values and writes them between the segments.
+// A placeholder name consists of letters, digits, '_', '-' and '.', and it can only be used in the text of the card.
+public final class CardTemplate {
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{([A-Za-z0-9_.\\-]+)}}");
+    // key: the JSON of the card structure, so the same structure is compiled once
+    private static final Cache<String, CardTemplate> CACHE = Caffeine.newBuilder()
+            .maximumSize(256)
+            .build();
+
+    private final String json;
+    private final String[] cardSegments; // the card JSON around the placeholders
+    private final String[] bodySegments; // the same, escaped as the content of a JSON string
+    private final int[] slots; // slots[i] is the placeholder between segment i and i + 1, index of names
+    private final List<String> names;
+    private final Map<String, Integer> indexes;
+
+    private CardTemplate(String json) {
+        this.json = json;
+        List<String> segments = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        Map<String, Integer> indexMap = new LinkedHashMap<>();
+        Matcher matcher = PLACEHOLDER.matcher(json);
+        int last = 0;
+        while (matcher.find()) {
+            segments.add(json.substring(last, matcher.start()));
+            Integer index = indexMap.computeIfAbsent(matcher.group(1), k -> indexMap.size());
+            slotList.add(index);
+            last = matcher.end();
+        }
+        segments.add(json.substring(last));
+
+        this.cardSegments = segments.toArray(new String[0]);
+        this.bodySegments = new String[cardSegments.length];
+        for (int i = 0; i < cardSegments.length; i++) {
+            bodySegments[i] = escape(cardSegments[i]);
+        }
+        this.slots = new int[slotList.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = slotList.get(i);
+        }
+        this.names = Collections.unmodifiableList(new ArrayList<>(indexMap.keySet()));
+        this.indexes = indexMap;
+    }
+
+    public static CardTemplate compile(CardComponent component) {
+        return compile(CardBuilder.serialize(component));
+    }
+
+    public static CardTemplate compile(MultipleCardComponent component) {
+        return compile(CardBuilder.serialize(component));
+    }
+
+    private static CardTemplate compile(JsonArray array) {
+        return CACHE.get(JsonBody.GSON.toJson(array), CardTemplate::new);
+    }
+
+    // the placeholder names, in the order of their first appearance
+    public List<String> getPlaceholders() {
+        return names;
+    }
+
+    // values: the value of each placeholder, in the order of getPlaceholders()
+    public Filled fillInOrder(Object... values) {
+        if (values.length != names.size()) {
+            throw new IllegalArgumentException("Expected " + names.size() + " values " + names + ", got " + values.length);
+        }
+        String[] result = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = String.valueOf(values[i]);
+        }
+        return new Filled(this, result);
+    }
+
+    // keysAndValues: name1, value1, name2, value2...
+    public Filled fill(Object... keysAndValues) {
+        if (keysAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("The placeholder names and values should be in pairs");
+        }
+        String[] result = new String[names.size()];
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            result[indexOf(String.valueOf(keysAndValues[i]))] = String.valueOf(keysAndValues[i + 1]);
+        }
+        return new Filled(this, checkFilled(result));
+    }
+
+    public Filled fill(Map<String, ?> values) {
+        String[] result = new String[names.size()];
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            result[indexOf(entry.getKey())] = String.valueOf(entry.getValue());
+        }
+        return new Filled(this, checkFilled(result));
+    }
+
+    private int indexOf(String name) {
+        Integer index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown placeholder: " + name);
+        }
+        return index;
+    }
+
+    private String[] checkFilled(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("No value for placeholder: " + names.get(i));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return json.equals(((CardTemplate) o).json);
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+    // the JSON of the card structure, with the placeholders
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    private static String escape(String text) {
+        StringWriter result = new StringWriter(text.length() + 16);
+        try (Writer out = JsonBody.escaping(result)) {
+            out.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // should never happen, it is a StringWriter
+        }
+        return result.toString();
+    }
+
+    // A CardTemplate with all the placeholders filled, it can be sent like any other component.
+    public static final class Filled implements BaseComponent, JsonBody.EscapedString {
+        private final CardTemplate template;
+        private final String[] values;
+
+        private Filled(CardTemplate template, String[] values) {
+            this.template = template;
+            this.values = values;
+        }
+
+        public CardTemplate getTemplate() {
+            return template;
+        }
+
+        @Override
+        public void writeEscaped(Writer out) throws IOException {
+            // a value is escaped twice: as a string in the card JSON, then as a part of the content string
+            Writer valueOut = JsonBody.escaping(JsonBody.escaping(out));
+            String[] segments = template.bodySegments;
+            out.write(segments[0]);
+            for (int i = 0; i < template.slots.length; i++) {
+                valueOut.write(values[template.slots[i]]);
+                out.write(segments[i + 1]);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Filled filled = (Filled) o;
+            return template.equals(filled.template) && Arrays.equals(values, filled.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(template, Arrays.hashCode(values));
+        }
+
+        // the card JSON, as the content of the message
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(template.json.length() + 64);
+            String[] segments = template.cardSegments;
+            result.append(segments[0]);
+            for (int i = 0; i < template.slots.length; i++) {
+                result.append(escape(values[template.slots[i]]));
+                result.append(segments[i + 1]);
+            }
+            return result.toString();
+        }
+    }
+}
@@ -18,9 +18,9 @@
 
 package snw.kookbc.impl.entity.builder;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Nullable;
 import snw.jkook.entity.User;
 import snw.jkook.entity.channel.TextChannel;
 import snw.jkook.message.Message;
@@ -36,9 +36,11 @@ import snw.jkook.message.component.card.Size;
 import snw.jkook.message.component.card.Theme;
 import snw.jkook.message.component.card.module.FileModule;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.message.LazyComponent;
 import snw.kookbc.impl.message.PrivateMessageImpl;
 import snw.kookbc.impl.message.QuoteImpl;
 import snw.kookbc.impl.message.TextChannelMessageImpl;
+import snw.kookbc.impl.network.EmbeddedJson;
 
 public class MessageBuilder {
     private final KBCClient client;
@@ -47,16 +49,19 @@ public class MessageBuilder {
         this.client = client;
     }
 
-    // result format: {type, json}
+    // result format: {type, content}
+    // the content of a card is an EmbeddedJson, it is serialized into the request body directly. use toString() for the JSON text.
     public static Object[] serialize(BaseComponent component) {
         if (component instanceof MarkdownComponent) {
             return new Object[]{9, component.toString()};
         } else if (component instanceof TextComponent) {
             return new Object[]{1, component.toString()};
         } else if (component instanceof CardComponent) {
-            return new Object[]{10, new Gson().toJson(CardBuilder.serialize((CardComponent) component))};
+            return new Object[]{10, new EmbeddedJson(CardBuilder.serialize((CardComponent) component))};
         } else if (component instanceof MultipleCardComponent) {
-            return new Object[]{10, new Gson().toJson(CardBuilder.serialize((MultipleCardComponent) component))};
+            return new Object[]{10, new EmbeddedJson(CardBuilder.serialize((MultipleCardComponent) component))};
+        } else if (component instanceof CardTemplate.Filled) {
+            return new Object[]{10, component}; // written into the request body by itself, see CardTemplate
         } else if (component instanceof FileComponent) {
             FileComponent fileComponent = (FileComponent) component;
             MultipleCardComponent fileCard;
@@ -83,7 +88,7 @@ public class MessageBuilder {
         JsonObject authorObj = object.getAsJsonObject("extra").getAsJsonObject("author");
         User author = client.getStorage().getUser(authorObj.get("id").getAsString(), authorObj);
         long timeStamp = object.get("msg_timestamp").getAsLong();
-        return new PrivateMessageImpl(client, id, author, buildComponent(object), timeStamp, buildQuote(object.getAsJsonObject("extra").getAsJsonObject("quote")));
+        return new PrivateMessageImpl(client, id, author, LazyComponent.of(this, object), timeStamp, buildQuote(object.getAsJsonObject("extra").getAsJsonObject("quote")));
     }
 
     public TextChannelMessage buildTextChannelMessage(JsonObject object) {
@@ -92,7 +97,7 @@ public class MessageBuilder {
         User author = client.getStorage().getUser(authorObj.get("id").getAsString(), authorObj);
         TextChannel channel = (TextChannel) client.getStorage().getChannel(object.get("target_id").getAsString());
         long timeStamp = object.get("msg_timestamp").getAsLong();
-        return new TextChannelMessageImpl(client, id, author, buildComponent(object), timeStamp, buildQuote(object.getAsJsonObject("extra").getAsJsonObject("quote")), channel);
+        return new TextChannelMessageImpl(client, id, author, LazyComponent.of(this, object), timeStamp, buildQuote(object.getAsJsonObject("extra").getAsJsonObject("quote")), channel);
     }
 
     public Message buildQuote(JsonObject object) {
@@ -102,7 +107,7 @@ public class MessageBuilder {
         Message message = client.getStorage().getMessage(id);
         if (message != null) return message; // prevent resource leak
 
-        BaseComponent component = buildComponent(object);
+        LazyComponent component = LazyComponent.of(this, object);
         long timeStamp = object.get("create_at").getAsLong();
         JsonObject rawUser = object.getAsJsonObject("author");
         User author = client.getStorage().getUser(rawUser.get("id").getAsString(), rawUser);
@@ -112,7 +117,23 @@ public class MessageBuilder {
     public BaseComponent buildComponent(JsonObject object) {
         // we use text channel message format
         String content = object.get("content").getAsString();
-        switch (object.get("type").getAsInt()) {
+        int type = object.get("type").getAsInt();
+        return buildComponent(type, content, getAttachments(type, object));
+    }
+
+    // the attachment of a file message, null if the object is not a file message or it is a quote object
+    @Nullable
+    public static JsonObject getAttachments(int type, JsonObject object) {
+        if (type == 2 || type == 3 || type == 4) {
+            if (object.has("extra")) {
+                return object.getAsJsonObject("extra").getAsJsonObject("attachments");
+            }
+        }
+        return null;
+    }
+
+    public BaseComponent buildComponent(int componentType, String content, @Nullable JsonObject attachment) {
+        switch (componentType) {
             case 9:
                 return new MarkdownComponent(content);
             case 10:
@@ -129,8 +150,7 @@ public class MessageBuilder {
                 String title = "";
                 int size = -1;
                 FileComponent.Type type = FileComponent.Type.FILE;
-                if (object.has("extra")) { // standard component format
-                    JsonObject attachment = object.getAsJsonObject("extra").getAsJsonObject("attachments");
+                if (attachment != null) { // standard component format
                     url = attachment.get("url").getAsString();
                     title = attachment.get("name").getAsString();
                     // -1 for image files, because Kook does not provide size for image files.
@@ -39,6 +39,8 @@ import snw.kookbc.util.MapBuilder;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class TextChannelImpl extends ChannelImpl implements TextChannel {
     private int chatLimitTime;
@@ -103,6 +105,31 @@ public class TextChannelImpl extends ChannelImpl implements TextChannel {
 
     @Override
     public String sendComponent(BaseComponent component, @Nullable TextChannelMessage quote, @Nullable User tempTarget) {
+        Map<String, Object> body = buildMessageBody(component, quote, tempTarget);
+        try {
+            return client.getNetworkClient().post(HttpAPIRoute.CHANNEL_MESSAGE_SEND.toFullURL(), body).get("msg_id").getAsString();
+        } catch (BadResponseException e) {
+            throw translateSendFailure(e);
+        }
+    }
+
+    public CompletableFuture<String> sendComponentAsync(BaseComponent component) {
+        return sendComponentAsync(component, null, null);
+    }
+
+    // the non-blocking version of sendComponent, the result is the ID of the message
+    public CompletableFuture<String> sendComponentAsync(BaseComponent component, @Nullable TextChannelMessage quote, @Nullable User tempTarget) {
+        Map<String, Object> body = buildMessageBody(component, quote, tempTarget);
+        return client.getNetworkClient().postAsync(HttpAPIRoute.CHANNEL_MESSAGE_SEND.toFullURL(), body).handle((object, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                throw new CompletionException(cause instanceof BadResponseException ? translateSendFailure((BadResponseException) cause) : cause);
+            }
+            return object.get("msg_id").getAsString(); // a failure here completes the result exceptionally too
+        });
+    }
+
+    private Map<String, Object> buildMessageBody(BaseComponent component, @Nullable TextChannelMessage quote, @Nullable User tempTarget) {
         Object[] result = MessageBuilder.serialize(component);
         MapBuilder builder = new MapBuilder()
                 .put("target_id", getId())
@@ -114,18 +141,16 @@ public class TextChannelImpl extends ChannelImpl implements TextChannel {
         if (tempTarget != null) {
             builder.put("temp_target_id", tempTarget.getId());
         }
-        Map<String, Object> body = builder.build();
-        try {
-            return client.getNetworkClient().post(HttpAPIRoute.CHANNEL_MESSAGE_SEND.toFullURL(), body).get("msg_id").getAsString();
-        } catch (BadResponseException e) {
-            if ("资源不存在".equals(e.getRawMessage())) {
-                // 2023/1/17: special case for the resources that aren't created by Bots.
-                // Thanks: Edint386@Github
-                throw new IllegalArgumentException("Unable to send component. Is the resource created by Bot?", e);
-            } else {
-                throw e;
-            }
+        return builder.build();
+    }
+
+    private static RuntimeException translateSendFailure(BadResponseException e) {
+        if ("资源不存在".equals(e.getRawMessage())) {
+            // 2023/1/17: special case for the resources that aren't created by Bots.
+            // Thanks: Edint386@Github
+            return new IllegalArgumentException("Unable to send component. Is the resource created by Bot?", e);
         }
+        return e;
     }
 
     @Override
@@ -21,7 +21,6 @@ package snw.kookbc.impl.entity.channel;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import snw.jkook.entity.Guild;
 import snw.jkook.entity.User;
 import snw.jkook.entity.channel.Category;
@@ -69,8 +68,7 @@ public class VoiceChannelImpl extends ChannelImpl implements VoiceChannel {
 
     @Override
     public Collection<User> getUsers() {
-        String rawContent = client.getNetworkClient().getRawContent(HttpAPIRoute.CHANNEL_USER_LIST.toFullURL() + "?channel_id=" + getId());
-        JsonArray array = JsonParser.parseString(rawContent).getAsJsonObject().getAsJsonArray("data");
+        JsonArray array = client.getNetworkClient().get(HttpAPIRoute.CHANNEL_USER_LIST.toFullURL() + "?channel_id=" + getId(), JsonArray.class);
         Set<User> users = new HashSet<>();
         for (JsonElement element : array) {
             JsonObject obj = element.getAsJsonObject();
@@ -18,13 +18,16 @@
 
 package snw.kookbc.impl.event;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import snw.jkook.entity.*;
 import snw.jkook.entity.channel.Channel;
 import snw.jkook.entity.channel.TextChannel;
 import snw.jkook.entity.channel.VoiceChannel;
 import snw.jkook.event.Event;
+import snw.jkook.event.EventManager;
 import snw.jkook.event.channel.*;
 import snw.jkook.event.guild.*;
 import snw.jkook.event.item.ItemConsumedEvent;
@@ -38,17 +41,189 @@ import snw.jkook.event.user.*;
 import snw.jkook.message.PrivateMessage;
 import snw.jkook.message.TextChannelMessage;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.command.CommandManagerImpl;
 import snw.kookbc.impl.entity.ReactionImpl;
 import snw.kookbc.impl.entity.UserImpl;
 import snw.kookbc.impl.network.Frame;
 import snw.kookbc.impl.network.exceptions.BadResponseException;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
-// A basic enum-based event factory, designed for Network message processor.
+// A basic table-based event factory, designed for Network message processor.
+// The decoders are looked up by the "type" of the event, see the static block.
+// The events which nobody listens to are not built, only the cache is updated.
 public class EventFactory {
+    // the categories of the events, the operator can disable them by "disabled-event-categories" in kbc.yml
+    public static final String MESSAGE = "message"; // the messages received in the channels and in private, and the commands in them
+    public static final String MESSAGE_CHANGE = "message-change"; // updated, deleted, pinned and unpinned messages
+    public static final String REACTION = "reaction";
+    public static final String CHANNEL = "channel";
+    public static final String GUILD = "guild"; // the changes of the guilds, including bans and the joined/left guilds of the Bot
+    public static final String MEMBER = "member"; // the users joined/left guilds, went online/offline, or updated their nicknames
+    public static final String ROLE = "role";
+    public static final String EMOJI = "emoji";
+    public static final String VOICE = "voice";
+    public static final String BUTTON = "button";
+    public static final String USER = "user";
+    public static final String ITEM = "item";
+
+    // key: the "type" in the "extra" object of an event frame
+    private static final Map<String, EventKind> KINDS = new HashMap<>();
+    // the message types which we have not seen yet
+    private static final EventKind UNKNOWN_MESSAGE = new EventKind(MESSAGE, null, EventFactory::message, null);
+
+    static {
+        // text, image, video, file, audio, KMarkdown, card
+        for (String messageType : new String[]{"1", "2", "3", "4", "8", "9", "10"}) {
+            register(messageType, UNKNOWN_MESSAGE);
+        }
+        register("12", new EventKind(ITEM, ItemConsumedEvent.class, EventFactory::itemConsumed, null));
+        register(EventType.CHANNEL_USER_ADD_REACTION, REACTION, UserAddReactionEvent.class, EventFactory::addReaction);
+        register(EventType.PM_ADD_REACTION, REACTION, UserAddReactionEvent.class, EventFactory::addReaction);
+        register(EventType.PM_REMOVE_REACTION, REACTION, UserRemoveReactionEvent.class, EventFactory::removeReaction, EventFactory::forgetReaction);
+        register(EventType.CHANNEL_USER_REMOVE_REACTION, REACTION, UserRemoveReactionEvent.class, EventFactory::removeReaction, EventFactory::forgetReaction);
+        register(EventType.CHANNEL_MESSAGE_UPDATE, MESSAGE_CHANGE, ChannelMessageUpdateEvent.class, EventFactory::channelMessageUpdate);
+        register(EventType.CHANNEL_MESSAGE_DELETE, MESSAGE_CHANGE, ChannelMessageDeleteEvent.class, EventFactory::channelMessageDelete, EventFactory::forgetMessage);
+        register(EventType.CHANNEL_CREATE, CHANNEL, ChannelCreateEvent.class, EventFactory::channelCreate);
+        register(EventType.CHANNEL_UPDATE, CHANNEL, ChannelInfoUpdateEvent.class, EventFactory::channelUpdate, EventFactory::updateCachedChannel);
+        register(EventType.CHANNEL_DELETE, CHANNEL, ChannelDeleteEvent.class, EventFactory::channelDelete, (client, object, body) -> client.getStorage().removeChannel(body.get("id").getAsString()));
+        register(EventType.CHANNEL_MESSAGE_PINNED, MESSAGE_CHANGE, ChannelMessagePinEvent.class, EventFactory::channelMessagePinned);
+        register(EventType.CHANNEL_MESSAGE_UNPINNED, MESSAGE_CHANGE, ChannelMessageUnpinEvent.class, EventFactory::channelMessageUnpinned);
+        register(EventType.GUILD_USER_UPDATE, MEMBER, GuildUserNickNameUpdateEvent.class, EventFactory::guildUserUpdate);
+        register(EventType.GUILD_USER_ONLINE, MEMBER, UserOnlineEvent.class, EventFactory::guildUserOnline);
+        register(EventType.GUILD_USER_OFFLINE, MEMBER, UserOfflineEvent.class, EventFactory::guildUserOffline);
+        register(EventType.GUILD_ADD_ROLE, ROLE, RoleCreateEvent.class, EventFactory::guildAddRole);
+        register(EventType.GUILD_REMOVE_ROLE, ROLE, RoleDeleteEvent.class, EventFactory::guildRemoveRole);
+        register(EventType.GUILD_UPDATE_ROLE, ROLE, RoleInfoUpdateEvent.class, EventFactory::guildUpdateRole, EventFactory::updateCachedRole);
+        register(EventType.GUILD_UPDATE, GUILD, GuildInfoUpdateEvent.class, EventFactory::guildUpdate, EventFactory::updateCachedGuild);
+        register(EventType.GUILD_DELETE, GUILD, GuildDeleteEvent.class, EventFactory::guildDelete, (client, object, body) -> client.getStorage().removeGuild(body.get("id").getAsString()));
+        register(EventType.GUILD_BAN, GUILD, GuildBanUserEvent.class, EventFactory::guildBan);
+        register(EventType.GUILD_UNBAN, GUILD, GuildUnbanUserEvent.class, EventFactory::guildUnban);
+        register(EventType.ADD_EMOJI, EMOJI, GuildAddEmojiEvent.class, EventFactory::addEmoji);
+        register(EventType.DELETE_EMOJI, EMOJI, GuildRemoveEmojiEvent.class, EventFactory::deleteEmoji);
+        register(EventType.UPDATE_EMOJI, EMOJI, GuildUpdateEmojiEvent.class, EventFactory::updateEmoji, EventFactory::updateCachedEmoji);
+        register(EventType.PM_UPDATE, MESSAGE_CHANGE, PrivateMessageUpdateEvent.class, EventFactory::pmUpdate);
+        register(EventType.PM_DELETE, MESSAGE_CHANGE, PrivateMessageDeleteEvent.class, EventFactory::pmDelete, EventFactory::forgetMessage);
+        register(EventType.USER_JOINED_GUILD, MEMBER, UserJoinGuildEvent.class, EventFactory::userJoinedGuild);
+        register(EventType.USER_LEFT_GUILD, MEMBER, UserLeaveGuildEvent.class, EventFactory::userLeftGuild);
+        register(EventType.USER_JOINED_VOICE_CHANNEL, VOICE, UserJoinVoiceChannelEvent.class, EventFactory::userJoinedVoiceChannel);
+        register(EventType.USER_LEFT_VOICE_CHANNEL, VOICE, UserLeaveVoiceChannelEvent.class, EventFactory::userLeftVoiceChannel);
+        register(EventType.USER_CLICK_BUTTON, BUTTON, UserClickButtonEvent.class, EventFactory::userClickButton);
+        register(EventType.USER_UPDATE, USER, UserInfoUpdateEvent.class, EventFactory::userUpdate, EventFactory::updateCachedUser);
+        register(EventType.SELF_JOINED_GUILD, GUILD, UserJoinGuildEvent.class, EventFactory::selfJoinedGuild);
+        register(EventType.SELF_LEFT_GUILD, GUILD, UserLeaveGuildEvent.class, EventFactory::selfLeftGuild);
+        for (EventType type : EventType.values()) {
+            if (!KINDS.containsKey(type.getValue())) {
+                throw new IllegalStateException("No decoder for event type " + type);
+            }
+        }
+    }
+
+    // Builds the event from the frame data of a known type.
+    @FunctionalInterface
+    public interface EventDecoder {
+        // body: the "body" in the "extra" object, null for messages
+        Event decode(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp);
+    }
+
+    // Applies the changes of the cached objects described by an event which is not decoded.
+    @FunctionalInterface
+    public interface CacheUpdater {
+        void update(KBCClient client, JsonObject object, JsonObject body);
+    }
+
+    // The decoding rule of an event type.
+    public static final class EventKind {
+        private final String category;
+        private final Class<? extends Event> eventType; // null for messages, it depends on the channel type
+        private final EventDecoder decoder;
+        private final CacheUpdater cacheUpdater;
+
+        EventKind(String category, @Nullable Class<? extends Event> eventType, EventDecoder decoder, @Nullable CacheUpdater cacheUpdater) {
+            this.category = category;
+            this.eventType = eventType;
+            this.decoder = decoder;
+            this.cacheUpdater = cacheUpdater;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public EventDecoder getDecoder() {
+            return decoder;
+        }
+
+        // Returns false if nobody needs the event, so it can be skipped.
+        public boolean isWanted(KBCClient client, JsonObject object) {
+            EventManager eventManager = client.getCore().getEventManager();
+            if (!(eventManager instanceof EventManagerImpl)) {
+                return true; // we don't know its listeners
+            }
+            EventManagerImpl manager = (EventManagerImpl) eventManager;
+            if (manager.isCategoryDisabled(category)) {
+                return false;
+            }
+            if (eventType != null) {
+                return manager.isSubscribed(eventType);
+            }
+            // messages, the commands are in them
+            if (!((CommandManagerImpl) client.getCore().getCommandManager()).getCommands().isEmpty()) {
+                return true;
+            }
+            return manager.isSubscribed(isPrivate(object) ? PrivateMessageReceivedEvent.class : ChannelMessageEvent.class);
+        }
+
+        // called instead of the decoder if the event is not wanted
+        public void skip(KBCClient client, JsonObject object, JsonObject body) {
+            if (cacheUpdater != null) {
+                cacheUpdater.update(client, object, body);
+            }
+        }
+    }
+
+    // Get the key used for choosing the event lane of the provided event payload.
+    // The events with the same key will be processed in order.
+    // The channel ID is preferred, then the guild ID, then the user ID.
+    public static String getPartitionKey(JsonObject object) {
+        JsonObject body = null;
+        JsonElement extra = object.get("extra");
+        if (extra != null && extra.isJsonObject()) {
+            JsonElement rawBody = extra.getAsJsonObject().get("body");
+            if (rawBody != null && rawBody.isJsonObject()) {
+                body = rawBody.getAsJsonObject();
+            }
+        }
+        String channelId = getStringOrNull(body, "channel_id");
+        if (channelId != null) {
+            return channelId;
+        }
+        if ("GROUP".equals(getStringOrNull(object, "channel_type"))) {
+            // the channel ID for channel messages, the guild ID for system events
+            String targetId = getStringOrNull(object, "target_id");
+            if (targetId != null) {
+                return targetId;
+            }
+        }
+        String userId = getStringOrNull(body, "user_id");
+        if (userId != null) {
+            return userId;
+        }
+        String authorId = getStringOrNull(object, "author_id");
+        return authorId != null ? authorId : "";
+    }
+
+    private static String getStringOrNull(JsonObject object, String key) {
+        if (object == null) {
+            return null;
+        }
+        JsonElement element = object.get(key);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
 
     // the object should be provided from snw.kbc.impl.network.Frame#getData.
     public static Event getEvent(@NotNull KBCClient client, @NotNull Frame frame) {
@@ -57,230 +232,385 @@ public class EventFactory {
 
         JsonObject extra = object.getAsJsonObject("extra");
         String type = extra.get("type").getAsString();
-        Integer messageType;
-        try {
-            messageType = Integer.parseInt(type);
-        } catch (NumberFormatException e) {
-            messageType = null;
-        }
-        if (messageType != null) {
-            if (messageType == 12) {
-                JsonObject content = object.getAsJsonObject("content");
-                User consumer = client.getStorage().getUser(content.get("user_id").getAsString());
-                User affected = client.getStorage().getUser(content.get("target_id").getAsString());
-                int itemId = object.get("item_id").getAsInt();
-                return new ItemConsumedEvent(msgTimeStamp, consumer, affected, itemId);
-            }
-            if (Objects.equals(object.get("channel_type").getAsString(), "PERSON")) {
-                PrivateMessage pm = client.getMessageBuilder().buildPrivateMessage(object);
-                client.getStorage().addMessage(pm);
-                return new PrivateMessageReceivedEvent(pm.getTimeStamp(), pm.getSender(), pm);
-            } else {
-                TextChannelMessage message = client.getMessageBuilder().buildTextChannelMessage(object);
-                client.getStorage().addMessage(message);
-                return new ChannelMessageEvent(message.getTimeStamp(), message.getChannel(), message);
-            }
-        } else {
-            JsonObject body = extra.getAsJsonObject("body");
-            switch (EventType.value(type)) {
-                case CHANNEL_USER_ADD_REACTION:
-                case PM_ADD_REACTION:
-                    String messageId = body.get("msg_id").getAsString();
-                    User user = client.getStorage().getUser(
-                            body.get("user_id").getAsString()
-                    );
-                    JsonObject rawEmoji = body.getAsJsonObject("emoji");
-                    CustomEmoji emoji = client.getStorage().getEmoji(rawEmoji.get("id").getAsString(), rawEmoji);
-                    ReactionImpl reaction = new ReactionImpl(client, messageId, emoji, user, msgTimeStamp);
-                    client.getStorage().addReaction(reaction);
-                    return new UserAddReactionEvent(
-                            msgTimeStamp,
-                            user,
-                            body.get("msg_id").getAsString(),
-                            reaction
-                    );
-                case PM_REMOVE_REACTION:
-                case CHANNEL_USER_REMOVE_REACTION:
-                    JsonObject re = body.getAsJsonObject("emoji");
-                    CustomEmoji em = client.getStorage().getEmoji(re.get("id").getAsString(), re);
-                    Reaction reaction1 = client.getStorage().getReaction(
-                            body.get("msg_id").getAsString(), em,
-                            client.getStorage().getUser(body.get("user_id").getAsString()));
-                    if (reaction1 != null) {
-                        client.getStorage().removeReaction(reaction1);
-                    }
-                    return new UserRemoveReactionEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString()),
-                            body.get("msg_id").getAsString(),
-                            reaction1 == null ? new ReactionImpl(
-                                    client, body.get("msg_id").getAsString(),
-                                    em,
-                                    client.getStorage().getUser(body.get("user_id").getAsString()),
-                                    -1
-                            ) : reaction1
-                    );
-                case CHANNEL_MESSAGE_UPDATE:
-                    return new ChannelMessageUpdateEvent(
-                            msgTimeStamp,
-                            client.getStorage().getChannel(body.get("channel_id").getAsString()),
-                            body.get("msg_id").getAsString(),
-                            body.get("content").getAsString()
-                    );
-                case CHANNEL_MESSAGE_DELETE:
-                    client.getStorage().removeMessage(body.get("msg_id").getAsString());
-                    return new ChannelMessageDeleteEvent(
-                            msgTimeStamp,
-                            (TextChannel) client.getStorage().getChannel(body.get("channel_id").getAsString()), // if this error, we can regard it as internal error
-                            body.get("msg_id").getAsString()
-                    );
-                case CHANNEL_CREATE:
-                    Channel newChannel = client.getEntityBuilder().buildChannel(body);
-                    client.getStorage().addChannel(newChannel);
-                    return new ChannelCreateEvent(msgTimeStamp, newChannel);
-                case CHANNEL_UPDATE:
-                    Channel channel;
-                    try {
-                        channel = client.getStorage().getChannel(body.get("id").getAsString());
-                    } catch (BadResponseException e) {
-                        client.getCore().getLogger().warn("Detected snw.jkook.event.channel.ChannelInfoUpdateEvent, but we are unable to fetch channel (id {}).", body.get("id").getAsString());
-                        return null;
-                    }
-                    client.getEntityUpdater().updateChannel(body, channel);
-                    return new ChannelInfoUpdateEvent(msgTimeStamp, channel);
-                case CHANNEL_DELETE:
-                    client.getStorage().removeChannel(body.get("id").getAsString());
-                    return new ChannelDeleteEvent(msgTimeStamp, body.get("id").getAsString(), client.getStorage().getGuild(object.get("target_id").getAsString()));
-                case CHANNEL_MESSAGE_PINNED:
-                    return new ChannelMessagePinEvent(
-                            msgTimeStamp,
-                            client.getStorage().getChannel(body.get("channel_id").getAsString()),
-                            body.get("msg_id").getAsString(),
-                            client.getStorage().getUser(body.get("operator_id").getAsString())
-                    );
-                case CHANNEL_MESSAGE_UNPINNED:
-                    return new ChannelMessageUnpinEvent(
-                            msgTimeStamp,
-                            client.getStorage().getChannel(body.get("channel_id").getAsString()),
-                            body.get("msg_id").getAsString(),
-                            client.getStorage().getUser(body.get("operator_id").getAsString())
-                    );
-                case GUILD_USER_UPDATE:
-                    return new GuildUserNickNameUpdateEvent(
-                            msgTimeStamp,
-                            client.getStorage().getGuild(object.get("target_id").getAsString()),
-                            client.getStorage().getUser(body.get("user_id").getAsString()),
-                            body.get("nickname").getAsString());
-                case GUILD_USER_ONLINE:
-                    return new UserOnlineEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString())
-                    );
-                case GUILD_USER_OFFLINE:
-                    return new UserOfflineEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString())
-                    );
-                case GUILD_ADD_ROLE:
-                    Role role = client.getEntityBuilder().buildRole(
-                            client.getStorage().getGuild(object.get("target_id").getAsString()),
-                            body
-                    );
-                    return new RoleCreateEvent(msgTimeStamp, role);
-                case GUILD_REMOVE_ROLE:
-                    Role deletedRole = client.getEntityBuilder().buildRole(
-                            client.getStorage().getGuild(object.get("target_id").getAsString()),
-                            body);
-                    return new RoleDeleteEvent(msgTimeStamp, deletedRole);
-                case GUILD_UPDATE_ROLE:
-                    Guild guild = client.getStorage().getGuild(object.get("target_id").getAsString());
-                    client.getEntityUpdater().updateRole(
-                            body,
-                            client.getStorage().getRole(guild, body.get("role_id").getAsInt(), body)
-                    );
-                    return new RoleInfoUpdateEvent(msgTimeStamp, client.getStorage().getRole(guild, body.get("role_id").getAsInt()));
-                case GUILD_UPDATE:
-                    Guild guild1 = client.getStorage().getGuild(body.get("id").getAsString());
-                    client.getEntityUpdater().updateGuild(body, guild1);
-                    return new GuildInfoUpdateEvent(msgTimeStamp, guild1);
-                case GUILD_DELETE:
-                    client.getStorage().removeGuild(body.get("id").getAsString());
-                    return new GuildDeleteEvent(msgTimeStamp, body.get("id").getAsString());
-                case GUILD_BAN:
-                    List<User> banned = new ArrayList<>();
-                    body.getAsJsonArray("user_id").forEach(
-                            IT -> banned.add(client.getStorage().getUser(IT.getAsString()))
-                    );
-                    return new GuildBanUserEvent(msgTimeStamp, client.getStorage().getGuild(object.get("target_id").getAsString()), banned, client.getStorage().getUser(body.get("operator_id").getAsString()), body.get("remark").getAsString());
-                case GUILD_UNBAN:
-                    List<User> unbanned = new ArrayList<>();
-                    body.getAsJsonArray("user_id").forEach(
-                            IT -> unbanned.add(client.getStorage().getUser(IT.getAsString()))
-                    );
-                    return new GuildUnbanUserEvent(msgTimeStamp, client.getStorage().getGuild(object.get("target_id").getAsString()), unbanned, client.getStorage().getUser(body.get("operator_id").getAsString()));
-                case ADD_EMOJI:
-                    CustomEmoji emoji1 = client.getEntityBuilder().buildEmoji(body);
-                    return new GuildAddEmojiEvent(msgTimeStamp, emoji1.getGuild(), emoji1);
-                case DELETE_EMOJI:
-                    CustomEmoji emoji2 = client.getStorage().getEmoji(body.get("id").getAsString(), body);
-                    return new GuildRemoveEmojiEvent(msgTimeStamp, emoji2.getGuild(), emoji2);
-                case UPDATE_EMOJI:
-                    CustomEmoji emoji3 = client.getStorage().getEmoji(body.get("id").getAsString(), body);
-                    client.getEntityUpdater().updateEmoji(body, emoji3);
-                    return new GuildUpdateEmojiEvent(msgTimeStamp, emoji3.getGuild(), emoji3);
-                case PM_UPDATE:
-                    return new PrivateMessageUpdateEvent(msgTimeStamp, body.get("msg_id").getAsString(), body.get("content").getAsString());
-                case PM_DELETE:
-                    client.getStorage().removeMessage(body.get("msg_id").getAsString());
-                    return new PrivateMessageDeleteEvent(msgTimeStamp, body.get("msg_id").getAsString());
-                case USER_JOINED_GUILD:
-                    return new UserJoinGuildEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString()),
-                            client.getStorage().getGuild(object.get("target_id").getAsString())
-                    );
-                case USER_LEFT_GUILD:
-                    return new UserLeaveGuildEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString()),
-                            client.getStorage().getGuild(object.get("target_id").getAsString())
-                    );
-                case USER_JOINED_VOICE_CHANNEL:
-                    return new UserJoinVoiceChannelEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString()),
-                            (VoiceChannel) client.getStorage().getChannel(body.get("channel_id").getAsString())
-                    );
-                case USER_LEFT_VOICE_CHANNEL:
-                    return new UserLeaveVoiceChannelEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString()),
-                            (VoiceChannel) client.getStorage().getChannel(body.get("channel_id").getAsString())
-                    );
-                case USER_CLICK_BUTTON:
-                    return new UserClickButtonEvent(
-                            msgTimeStamp,
-                            client.getStorage().getUser(body.get("user_id").getAsString()),
-                            body.get("msg_id").getAsString(),
-                            body.get("value").getAsString(),
-                            Objects.equals(
-                                    body.get("user_id").getAsString(),
-                                    body.get("target_id").getAsString()
-                            ) ? null : (TextChannel) client.getStorage().getChannel(body.get("target_id").getAsString())
-                    );
-                case USER_UPDATE:
-                    UserImpl updatedUser = ((UserImpl) client.getStorage().getUser(body.get("body_id").getAsString()));
-                    updatedUser.setName(body.get("username").getAsString());
-                    updatedUser.setAvatarUrl(body.get("avatar").getAsString());
-                    return new UserInfoUpdateEvent(msgTimeStamp, updatedUser);
-                case SELF_JOINED_GUILD:
-                    return new UserJoinGuildEvent(msgTimeStamp, client.getCore().getUser(), client.getStorage().getGuild(body.get("guild_id").getAsString()));
-                case SELF_LEFT_GUILD:
-                    return new UserLeaveGuildEvent(msgTimeStamp, client.getCore().getUser(), client.getStorage().getGuild(body.get("guild_id").getAsString()));
+        EventKind kind = getKind(type);
+        if (kind != null) {
+            JsonElement rawBody = extra.get("body"); // the message events do not have the body
+            JsonObject body = rawBody != null && rawBody.isJsonObject() ? rawBody.getAsJsonObject() : null;
+            if (!kind.isWanted(client, object)) {
+                kind.skip(client, object, body); // keep the cache correct without building the event
+                return null;
             }
+            return kind.getDecoder().decode(client, object, body, msgTimeStamp);
         }
         client.getCore().getLogger().error("We cannot understand the frame.");
         client.getCore().getLogger().error("Frame content: {}", frame);
         return null; // don't worry, the caller will handle null.
     }
+
+    // Get the decoding rule of the provided "type" in the "extra" object, null if the type is unknown.
+    // The system events are named, the types of messages are numbers.
+    public static EventKind getKind(String type) {
+        EventKind kind = KINDS.get(type);
+        if (kind == null && isNumber(type)) {
+            return UNKNOWN_MESSAGE; // treat it like the others
+        }
+        return kind;
+    }
+
+    private static boolean isNumber(String str) {
+        if (str.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void register(String type, EventKind kind) {
+        if (KINDS.put(type, kind) != null) {
+            throw new IllegalStateException("Duplicated decoder for event type " + type);
+        }
+    }
+
+    private static void register(EventType type, String category, Class<? extends Event> eventType, EventDecoder decoder) {
+        register(type, category, eventType, decoder, null);
+    }
+
+    private static void register(EventType type, String category, Class<? extends Event> eventType, EventDecoder decoder, @Nullable CacheUpdater cacheUpdater) {
+        register(type.getValue(), new EventKind(category, eventType, decoder, cacheUpdater));
+    }
+
+    private static boolean isPrivate(JsonObject object) {
+        return Objects.equals(object.get("channel_type").getAsString(), "PERSON");
+    }
+
+    private static Event message(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        if (isPrivate(object)) {
+            PrivateMessage pm = client.getMessageBuilder().buildPrivateMessage(object);
+            client.getStorage().addMessage(pm);
+            return new PrivateMessageReceivedEvent(pm.getTimeStamp(), pm.getSender(), pm);
+        } else {
+            TextChannelMessage message = client.getMessageBuilder().buildTextChannelMessage(object);
+            client.getStorage().addMessage(message);
+            return new ChannelMessageEvent(message.getTimeStamp(), message.getChannel(), message);
+        }
+    }
+
+    private static Event itemConsumed(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        JsonObject content = object.getAsJsonObject("content");
+        User consumer = client.getStorage().getUser(content.get("user_id").getAsString());
+        User affected = client.getStorage().getUser(content.get("target_id").getAsString());
+        int itemId = object.get("item_id").getAsInt();
+        return new ItemConsumedEvent(msgTimeStamp, consumer, affected, itemId);
+    }
+
+    private static Event addReaction(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        String messageId = body.get("msg_id").getAsString();
+        User user = client.getStorage().getUser(
+                body.get("user_id").getAsString()
+        );
+        JsonObject rawEmoji = body.getAsJsonObject("emoji");
+        CustomEmoji emoji = client.getStorage().getEmoji(rawEmoji.get("id").getAsString(), rawEmoji);
+        ReactionImpl reaction = new ReactionImpl(client, messageId, emoji, user, msgTimeStamp);
+        client.getStorage().addReaction(reaction);
+        return new UserAddReactionEvent(
+                msgTimeStamp,
+                user,
+                body.get("msg_id").getAsString(),
+                reaction
+        );
+    }
+
+    private static Event removeReaction(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        JsonObject re = body.getAsJsonObject("emoji");
+        CustomEmoji em = client.getStorage().getEmoji(re.get("id").getAsString(), re);
+        Reaction reaction = client.getStorage().getReaction(
+                body.get("msg_id").getAsString(), em,
+                client.getStorage().getUser(body.get("user_id").getAsString()));
+        if (reaction != null) {
+            client.getStorage().removeReaction(reaction);
+        }
+        return new UserRemoveReactionEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString()),
+                body.get("msg_id").getAsString(),
+                reaction == null ? new ReactionImpl(
+                        client, body.get("msg_id").getAsString(),
+                        em,
+                        client.getStorage().getUser(body.get("user_id").getAsString()),
+                        -1
+                ) : reaction
+        );
+    }
+
+    private static Event channelMessageUpdate(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new ChannelMessageUpdateEvent(
+                msgTimeStamp,
+                client.getStorage().getChannel(body.get("channel_id").getAsString()),
+                body.get("msg_id").getAsString(),
+                body.get("content").getAsString()
+        );
+    }
+
+    private static Event channelMessageDelete(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        client.getStorage().removeMessage(body.get("msg_id").getAsString());
+        return new ChannelMessageDeleteEvent(
+                msgTimeStamp,
+                (TextChannel) client.getStorage().getChannel(body.get("channel_id").getAsString()), // if this error, we can regard it as internal error
+                body.get("msg_id").getAsString()
+        );
+    }
+
+    private static Event channelCreate(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        Channel newChannel = client.getEntityBuilder().buildChannel(body);
+        client.getStorage().addChannel(newChannel);
+        return new ChannelCreateEvent(msgTimeStamp, newChannel);
+    }
+
+    private static Event channelUpdate(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        Channel channel;
+        try {
+            channel = client.getStorage().getChannel(body.get("id").getAsString());
+        } catch (BadResponseException e) {
+            client.getCore().getLogger().warn("Detected snw.jkook.event.channel.ChannelInfoUpdateEvent, but we are unable to fetch channel (id {}).", body.get("id").getAsString());
+            return null;
+        }
+        client.getEntityUpdater().updateChannel(body, channel);
+        return new ChannelInfoUpdateEvent(msgTimeStamp, channel);
+    }
+
+    private static Event channelDelete(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        client.getStorage().removeChannel(body.get("id").getAsString());
+        return new ChannelDeleteEvent(msgTimeStamp, body.get("id").getAsString(), client.getStorage().getGuild(object.get("target_id").getAsString()));
+    }
+
+    private static Event channelMessagePinned(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new ChannelMessagePinEvent(
+                msgTimeStamp,
+                client.getStorage().getChannel(body.get("channel_id").getAsString()),
+                body.get("msg_id").getAsString(),
+                client.getStorage().getUser(body.get("operator_id").getAsString())
+        );
+    }
+
+    private static Event channelMessageUnpinned(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new ChannelMessageUnpinEvent(
+                msgTimeStamp,
+                client.getStorage().getChannel(body.get("channel_id").getAsString()),
+                body.get("msg_id").getAsString(),
+                client.getStorage().getUser(body.get("operator_id").getAsString())
+        );
+    }
+
+    private static Event guildUserUpdate(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new GuildUserNickNameUpdateEvent(
+                msgTimeStamp,
+                client.getStorage().getGuild(object.get("target_id").getAsString()),
+                client.getStorage().getUser(body.get("user_id").getAsString()),
+                body.get("nickname").getAsString());
+    }
+
+    private static Event guildUserOnline(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserOnlineEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString())
+        );
+    }
+
+    private static Event guildUserOffline(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserOfflineEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString())
+        );
+    }
+
+    private static Event guildAddRole(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        Role role = client.getEntityBuilder().buildRole(
+                client.getStorage().getGuild(object.get("target_id").getAsString()),
+                body
+        );
+        return new RoleCreateEvent(msgTimeStamp, role);
+    }
+
+    private static Event guildRemoveRole(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        Role deletedRole = client.getEntityBuilder().buildRole(
+                client.getStorage().getGuild(object.get("target_id").getAsString()),
+                body);
+        return new RoleDeleteEvent(msgTimeStamp, deletedRole);
+    }
+
+    private static Event guildUpdateRole(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        Guild guild = client.getStorage().getGuild(object.get("target_id").getAsString());
+        client.getEntityUpdater().updateRole(
+                body,
+                client.getStorage().getRole(guild, body.get("role_id").getAsInt(), body)
+        );
+        return new RoleInfoUpdateEvent(msgTimeStamp, client.getStorage().getRole(guild, body.get("role_id").getAsInt()));
+    }
+
+    private static Event guildUpdate(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        Guild guild = client.getStorage().getGuild(body.get("id").getAsString());
+        client.getEntityUpdater().updateGuild(body, guild);
+        return new GuildInfoUpdateEvent(msgTimeStamp, guild);
+    }
+
+    private static Event guildDelete(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        client.getStorage().removeGuild(body.get("id").getAsString());
+        return new GuildDeleteEvent(msgTimeStamp, body.get("id").getAsString());
+    }
+
+    private static Event guildBan(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        List<User> banned = new ArrayList<>();
+        body.getAsJsonArray("user_id").forEach(
+                IT -> banned.add(client.getStorage().getUser(IT.getAsString()))
+        );
+        return new GuildBanUserEvent(msgTimeStamp, client.getStorage().getGuild(object.get("target_id").getAsString()), banned, client.getStorage().getUser(body.get("operator_id").getAsString()), body.get("remark").getAsString());
+    }
+
+    private static Event guildUnban(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        List<User> unbanned = new ArrayList<>();
+        body.getAsJsonArray("user_id").forEach(
+                IT -> unbanned.add(client.getStorage().getUser(IT.getAsString()))
+        );
+        return new GuildUnbanUserEvent(msgTimeStamp, client.getStorage().getGuild(object.get("target_id").getAsString()), unbanned, client.getStorage().getUser(body.get("operator_id").getAsString()));
+    }
+
+    private static Event addEmoji(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        CustomEmoji emoji = client.getEntityBuilder().buildEmoji(body);
+        return new GuildAddEmojiEvent(msgTimeStamp, emoji.getGuild(), emoji);
+    }
+
+    private static Event deleteEmoji(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        CustomEmoji emoji = client.getStorage().getEmoji(body.get("id").getAsString(), body);
+        return new GuildRemoveEmojiEvent(msgTimeStamp, emoji.getGuild(), emoji);
+    }
+
+    private static Event updateEmoji(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        CustomEmoji emoji = client.getStorage().getEmoji(body.get("id").getAsString(), body);
+        client.getEntityUpdater().updateEmoji(body, emoji);
+        return new GuildUpdateEmojiEvent(msgTimeStamp, emoji.getGuild(), emoji);
+    }
+
+    private static Event pmUpdate(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new PrivateMessageUpdateEvent(msgTimeStamp, body.get("msg_id").getAsString(), body.get("content").getAsString());
+    }
+
+    private static Event pmDelete(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        client.getStorage().removeMessage(body.get("msg_id").getAsString());
+        return new PrivateMessageDeleteEvent(msgTimeStamp, body.get("msg_id").getAsString());
+    }
+
+    private static Event userJoinedGuild(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserJoinGuildEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString()),
+                client.getStorage().getGuild(object.get("target_id").getAsString())
+        );
+    }
+
+    private static Event userLeftGuild(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserLeaveGuildEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString()),
+                client.getStorage().getGuild(object.get("target_id").getAsString())
+        );
+    }
+
+    private static Event userJoinedVoiceChannel(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserJoinVoiceChannelEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString()),
+                (VoiceChannel) client.getStorage().getChannel(body.get("channel_id").getAsString())
+        );
+    }
+
+    private static Event userLeftVoiceChannel(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserLeaveVoiceChannelEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString()),
+                (VoiceChannel) client.getStorage().getChannel(body.get("channel_id").getAsString())
+        );
+    }
+
+    private static Event userClickButton(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserClickButtonEvent(
+                msgTimeStamp,
+                client.getStorage().getUser(body.get("user_id").getAsString()),
+                body.get("msg_id").getAsString(),
+                body.get("value").getAsString(),
+                Objects.equals(
+                        body.get("user_id").getAsString(),
+                        body.get("target_id").getAsString()
+                ) ? null : (TextChannel) client.getStorage().getChannel(body.get("target_id").getAsString())
+        );
+    }
+
+    private static Event userUpdate(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        UserImpl updatedUser = ((UserImpl) client.getStorage().getUser(body.get("body_id").getAsString()));
+        updatedUser.setName(body.get("username").getAsString());
+        updatedUser.setAvatarUrl(body.get("avatar").getAsString());
+        return new UserInfoUpdateEvent(msgTimeStamp, updatedUser);
+    }
+
+    private static Event selfJoinedGuild(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserJoinGuildEvent(msgTimeStamp, client.getCore().getUser(), client.getStorage().getGuild(body.get("guild_id").getAsString()));
+    }
+
+    private static Event selfLeftGuild(KBCClient client, JsonObject object, JsonObject body, long msgTimeStamp) {
+        return new UserLeaveGuildEvent(msgTimeStamp, client.getCore().getUser(), client.getStorage().getGuild(body.get("guild_id").getAsString()));
+    }
+
+    // The following methods only touch the cached objects, they are used when the event is skipped.
+
+    private static void forgetMessage(KBCClient client, JsonObject object, JsonObject body) {
+        client.getStorage().removeMessage(body.get("msg_id").getAsString());
+    }
+
+    private static void forgetReaction(KBCClient client, JsonObject object, JsonObject body) {
+        client.getStorage().removeReaction(
+                body.get("msg_id").getAsString(),
+                body.getAsJsonObject("emoji").get("id").getAsString(),
+                body.get("user_id").getAsString()
+        );
+    }
+
+    private static void updateCachedChannel(KBCClient client, JsonObject object, JsonObject body) {
+        Channel channel = client.getStorage().getCachedChannel(body.get("id").getAsString());
+        if (channel != null) {
+            client.getEntityUpdater().updateChannel(body, channel);
+        }
+    }
+
+    private static void updateCachedGuild(KBCClient client, JsonObject object, JsonObject body) {
+        Guild guild = client.getStorage().getCachedGuild(body.get("id").getAsString());
+        if (guild != null) {
+            client.getEntityUpdater().updateGuild(body, guild);
+        }
+    }
+
+    private static void updateCachedRole(KBCClient client, JsonObject object, JsonObject body) {
+        Role role = client.getStorage().getRole(object.get("target_id").getAsString(), body.get("role_id").getAsInt());
+        if (role != null) {
+            client.getEntityUpdater().updateRole(body, role);
+        }
+    }
+
+    private static void updateCachedEmoji(KBCClient client, JsonObject object, JsonObject body) {
+        CustomEmoji emoji = client.getStorage().getEmoji(body.get("id").getAsString());
+        if (emoji != null) {
+            client.getEntityUpdater().updateEmoji(body, emoji);
+        }
+    }
+
+    private static void updateCachedUser(KBCClient client, JsonObject object, JsonObject body) {
+        User user = client.getStorage().getCachedUser(body.get("body_id").getAsString());
+        if (user instanceof UserImpl) {
+            ((UserImpl) user).setName(body.get("username").getAsString());
+            ((UserImpl) user).setAvatarUrl(body.get("avatar").getAsString());
+        }
+    }
 }
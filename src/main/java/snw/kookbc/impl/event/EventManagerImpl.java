@@ -30,10 +30,17 @@ import snw.jkook.event.Listener;
 import snw.jkook.plugin.Plugin;
 import snw.kookbc.impl.KBCClient;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static snw.kookbc.util.Util.ensurePluginEnabled;
 
@@ -42,11 +49,23 @@ public class EventManagerImpl implements EventManager {
     private final EventBus<Event> bus;
     private final MethodSubscriptionAdapter<Listener> msa;
     private final Map<Plugin, List<Listener>> listeners = new HashMap<>();
+    // The index of the subscribed event types, the network listener uses it to skip the events nobody wants.
+    // key: the parameter type of a registered handler, value: the count of such handlers
+    private final Map<Class<?>, Integer> handlerTypes = new HashMap<>();
+    private final Map<Listener, List<Class<?>>> listenerTypes = new IdentityHashMap<>();
+    // the results of isSubscribed, replaced when a listener is registered or unregistered
+    private volatile Map<Class<?>, Boolean> subscribed = new ConcurrentHashMap<>();
+    private final Set<String> disabledCategories;
 
     public EventManagerImpl(KBCClient client) {
         this.client = client;
         this.bus = new SimpleEventBus<>(Event.class);
         this.msa = new SimpleMethodSubscriptionAdapter<>(bus, EventExecutorFactoryImpl.INSTANCE, MethodScannerImpl.INSTANCE);
+        Set<String> disabled = new HashSet<>();
+        for (String category : client.getConfig().getStringList("disabled-event-categories")) {
+            disabled.add(category.toLowerCase());
+        }
+        this.disabledCategories = Collections.unmodifiableSet(disabled);
     }
 
     @Override
@@ -72,6 +91,7 @@ public class EventManagerImpl implements EventManager {
             throw e; // rethrow
         }
         getListeners(plugin).add(listener);
+        index(listener);
     }
 
     @Override
@@ -82,6 +102,71 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void unregisterHandlers(Listener listener) {
         msa.unregister(listener);
+        unindex(listener);
+    }
+
+    // Returns true if a registered handler accepts the events of the provided type.
+    public boolean isSubscribed(Class<? extends Event> type) {
+        Map<Class<?>, Boolean> results = subscribed;
+        Boolean result = results.get(type);
+        if (result == null) {
+            result = false;
+            synchronized (handlerTypes) {
+                for (Class<?> handlerType : handlerTypes.keySet()) {
+                    if (handlerType.isAssignableFrom(type)) { // the handlers of the super types get it too
+                        result = true;
+                        break;
+                    }
+                }
+            }
+            results.put(type, result);
+        }
+        return result;
+    }
+
+    // Returns true if the operator disabled the events of the provided category in the configuration.
+    // See EventFactory for the categories.
+    public boolean isCategoryDisabled(String category) {
+        return disabledCategories.contains(category);
+    }
+
+    private void index(Listener listener) {
+        List<Class<?>> types = getHandlerTypes(listener);
+        synchronized (handlerTypes) {
+            if (listenerTypes.putIfAbsent(listener, types) != null) {
+                return; // already indexed
+            }
+            for (Class<?> type : types) {
+                handlerTypes.merge(type, 1, Integer::sum);
+            }
+            subscribed = new ConcurrentHashMap<>();
+        }
+    }
+
+    private void unindex(Listener listener) {
+        synchronized (handlerTypes) {
+            List<Class<?>> types = listenerTypes.remove(listener);
+            if (types == null) {
+                return;
+            }
+            for (Class<?> type : types) {
+                handlerTypes.computeIfPresent(type, (k, count) -> count == 1 ? null : count - 1);
+            }
+            subscribed = new ConcurrentHashMap<>();
+        }
+    }
+
+    // the super classes are scanned too, an extra type only makes us decode an event which nobody handles
+    private static List<Class<?>> getHandlerTypes(Listener listener) {
+        List<Class<?>> result = new ArrayList<>();
+        for (Class<?> clazz = listener.getClass(); clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (method.getParameterCount() == 1 && MethodScannerImpl.INSTANCE.shouldRegister(listener, method)) {
+                    result.add(method.getParameterTypes()[0]);
+                }
+            }
+        }
+        return result;
     }
 
     private List<Listener> getListeners(Plugin plugin) {
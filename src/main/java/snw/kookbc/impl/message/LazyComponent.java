@@ -0,0 +1,86 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.message;
+
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Nullable;
+import snw.jkook.message.component.BaseComponent;
+import snw.jkook.message.component.TextComponent;
+import snw.kookbc.impl.entity.builder.MessageBuilder;
+
+// The component of a received message, decoded on the first get() call.
+// Most listeners only look at the sender or the channel, so the content (e.g. the JSON of a card)
+//  is not parsed until someone asks for it.
+public final class LazyComponent {
+    private volatile BaseComponent component;
+    private final int type;
+    // the raw data, released after decoding
+    private MessageBuilder builder;
+    private String content;
+    private JsonObject attachment;
+
+    private LazyComponent(BaseComponent component, int type) {
+        this.component = component;
+        this.type = type;
+    }
+
+    private LazyComponent(MessageBuilder builder, int type, String content, @Nullable JsonObject attachment) {
+        this.builder = builder;
+        this.type = type;
+        this.content = content;
+        this.attachment = attachment;
+    }
+
+    // object: a message object which contains "type" and "content"
+    public static LazyComponent of(MessageBuilder builder, JsonObject object) {
+        int type = object.get("type").getAsInt();
+        return new LazyComponent(builder, type, object.get("content").getAsString(), MessageBuilder.getAttachments(type, object));
+    }
+
+    // for the components which are already built (or null)
+    public static LazyComponent decoded(@Nullable BaseComponent component) {
+        return new LazyComponent(component, -1);
+    }
+
+    public BaseComponent get() {
+        BaseComponent result = component;
+        if (result == null) {
+            synchronized (this) {
+                result = component;
+                if (result == null && builder != null) {
+                    result = builder.buildComponent(type, content, attachment);
+                    component = result;
+                    builder = null;
+                    content = null;
+                    attachment = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    // true if get() returns a TextComponent (or its subclasses), without decoding
+    public boolean isText() {
+        BaseComponent result = component;
+        if (result != null) {
+            return result instanceof TextComponent;
+        }
+        return type == 1 || type == 9;
+    }
+}
@@ -20,7 +20,6 @@ package snw.kookbc.impl.message;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import org.jetbrains.annotations.Nullable;
 import snw.jkook.entity.CustomEmoji;
 import snw.jkook.entity.User;
@@ -45,11 +44,15 @@ public abstract class MessageImpl implements Message {
     protected final KBCClient client;
     private final String id;
     private final User user;
-    private final BaseComponent component;
+    private final LazyComponent component;
     private final long timeStamp;
     private final Message quote;
 
     public MessageImpl(KBCClient client, String id, User user, BaseComponent component, long timeStamp, Message quote) {
+        this(client, id, user, LazyComponent.decoded(component), timeStamp, quote);
+    }
+
+    public MessageImpl(KBCClient client, String id, User user, LazyComponent component, long timeStamp, Message quote) {
         this.client = client;
         this.id = id;
         this.user = user;
@@ -60,7 +63,12 @@ public abstract class MessageImpl implements Message {
 
     @Override
     public BaseComponent getComponent() {
-        return component;
+        return component.get();
+    }
+
+    // true if getComponent() returns a TextComponent, without decoding the component
+    public boolean isTextComponent() {
+        return component.isText();
     }
 
     @Override
@@ -87,7 +95,7 @@ public abstract class MessageImpl implements Message {
     public Collection<User> getUserByReaction(CustomEmoji customEmoji) {
         JsonArray array;
         try {
-            String rawStr = client.getNetworkClient().getRawContent(
+            array = client.getNetworkClient().get(
                     String.format(
                             "%s?msg_id=%s&emoji=%s",
                             ((this instanceof TextChannelMessage) ?
@@ -96,9 +104,9 @@ public abstract class MessageImpl implements Message {
                                     .toFullURL(),
                             getId(),
                             URLEncoder.encode(customEmoji.getId(), StandardCharsets.UTF_8.name())
-                    )
+                    ),
+                    JsonArray.class
             );
-            array = JsonParser.parseString(rawStr).getAsJsonObject().getAsJsonArray("data");
         } catch (BadResponseException e) {
             if (e.getCode() == 40300) { // 40300, so we should throw IllegalStateException
                 throw new IllegalStateException(e);
@@ -35,6 +35,10 @@ public class PrivateMessageImpl extends MessageImpl implements PrivateMessage {
         super(client, id, user, component, timeStamp, quote);
     }
 
+    public PrivateMessageImpl(KBCClient client, String id, User user, LazyComponent component, long timeStamp, Message quote) {
+        super(client, id, user, component, timeStamp, quote);
+    }
+
     @Override
     public void sendReaction(CustomEmoji emoji) {
         Map<String, Object> body = new MapBuilder()
@@ -28,12 +28,16 @@ import java.util.Collection;
 
 // This is a temporary bean object for the situations like quote received, but original object missing.
 public class QuoteImpl implements Message {
-    private final BaseComponent component;
+    private final LazyComponent component;
     private final String id;
     private final User sender;
     private final long timeStamp;
 
     public QuoteImpl(BaseComponent component, String id, User sender, long timeStamp) {
+        this(LazyComponent.decoded(component), id, sender, timeStamp);
+    }
+
+    public QuoteImpl(LazyComponent component, String id, User sender, long timeStamp) {
         this.component = component;
         this.id = id;
         this.sender = sender;
@@ -42,7 +46,7 @@ public class QuoteImpl implements Message {
 
     @Override
     public BaseComponent getComponent() {
-        return component;
+        return component.get();
     }
 
     @Override
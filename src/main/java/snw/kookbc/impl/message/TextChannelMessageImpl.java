@@ -40,6 +40,11 @@ public class TextChannelMessageImpl extends MessageImpl implements TextChannelMe
         this.channel = channel;
     }
 
+    public TextChannelMessageImpl(KBCClient client, String id, User user, LazyComponent component, long timeStamp, Message quote, TextChannel channel) {
+        super(client, id, user, component, timeStamp, quote);
+        this.channel = channel;
+    }
+
     @Override
     public void sendReaction(CustomEmoji emoji) {
         Map<String, Object> body = new MapBuilder()
@@ -25,61 +25,211 @@ import snw.kookbc.impl.network.exceptions.TooFastException;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 // Represents the Bucket of Rate Limit.
 // Not single instance. Created when network call requested.
-// Cached.
+// Cached per client, so the bots running in the same JVM don't share their limits.
+// The requests reserve a token, then wait until its window opens instead of failing.
+// The reservations are made in arrival order (fair lock), so the callers are served FIFO.
 public class Bucket {
     private static final Map<HttpAPIRoute, String> bucketNameMap = new HashMap<>();
-    private static final Map<String, Bucket> map = new ConcurrentHashMap<>();
+    private static final long DEFAULT_PERIOD = TimeUnit.SECONDS.toNanos(1);
+    // a later reset from remote within this is considered the same window
+    private static final long RESET_TOLERANCE = TimeUnit.MILLISECONDS.toNanos(100);
 
     private final KBCClient client;
     private final String name; // defined by response header
-    AtomicInteger availableTimes = new AtomicInteger(-1);
-    private volatile boolean scheduledToUpdate;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    // region guarded by lock
+    private int limit = -1; // unknown until we got the first response
+    private int tokens; // left in the window [opensAt, resetAt)
+    private long opensAt;
+    private long resetAt;
+    private long period = DEFAULT_PERIOD; // the length of a window, learned from the responses
+    // endregion
 
-    // Use get(KBCClient, String) method instead.
+    // region Metrics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    // endregion
+
+    // Use get(KBCClient, Map, HttpAPIRoute) method instead.
     private Bucket(KBCClient client, String name) {
         Validate.notNull(client);
         Validate.notNull(name);
         this.client = client;
         this.name = name;
+        this.opensAt = this.resetAt = System.nanoTime();
     }
 
-    public void scheduleUpdateAvailableTimes(int availableTimes, int after) {
-        if (!scheduledToUpdate) {
-            client.getCore().getScheduler().runTaskLater(client.getInternalPlugin(), () -> {
-                Bucket.this.availableTimes.set(availableTimes);
-                Bucket.this.scheduledToUpdate = false;
-            }, TimeUnit.SECONDS.toMillis(after));
+    // reserve a token, returns the time (System.nanoTime) at which the request can be sent.
+    // notBefore: the request can't be sent before this time anyway (e.g. the global limit)
+    // throws TooFastException without taking a token if the request would wait longer than maxWaitNanos.
+    public long reserve(long notBefore, long maxWaitNanos) {
+        requests.incrementAndGet();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long at = notBefore - now > 0 ? notBefore : now;
+            if (limit < 0) {
+                // At this time, we don't know remaining time, so we can't check it
+                // We should set the time after got response
+                checkWait(at - now, maxWaitNanos);
+                return at;
+            }
+            if (now - resetAt >= 0) { // the window has passed, and no one has reserved the next one
+                opensAt = now;
+                resetAt = now + period;
+                tokens = limit;
+            }
+            boolean nextWindow = tokens <= 0;
+            long open = nextWindow ? resetAt : opensAt;
+            if (open - at > 0) {
+                at = open;
+            }
+            checkWait(at - now, maxWaitNanos);
+            if (nextWindow) { // take the next window
+                opensAt = resetAt;
+                resetAt = opensAt + period;
+                tokens = limit;
+            }
+            tokens--;
+            return at;
+        } finally {
+            lock.unlock();
         }
     }
 
-    // throw TooFastException if too fast, or just decrease one request remaining time.
-    public void check() {
-        if (availableTimes.get() == -1) {
-            // At this time, we don't know remaining time, so we can't check it
-            // We should set the time after got response
+    private void checkWait(long wait, long maxWaitNanos) {
+        if (wait > maxWaitNanos) {
+            throw new TooFastException(name);
+        }
+    }
+
+    // wait until the provided time, which is returned by reserve.
+    public void await(long at) {
+        long wait = at - System.nanoTime();
+        if (wait <= 0) {
             return;
         }
-        if (availableTimes.get() < 0) {
-            throw new TooFastException(name);
+        recordWait(wait);
+        waiting.incrementAndGet();
+        try {
+            long remaining;
+            while ((remaining = at - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for the rate limit of bucket " + name);
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    // for the async calls, they are delayed instead of waiting
+    public void recordWait(long nanos) {
+        delayed.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // update the state from the X-Rate-Limit-* headers of a response
+    public void update(int limit, int remaining, long resetNanos) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            this.limit = limit;
+            if (resetNanos > period) {
+                period = resetNanos;
+            }
+            if (opensAt - now > 0) {
+                return; // someone has reserved a later window, it is based on the older state, keep it
+            }
+            long remoteResetAt = now + resetNanos;
+            if (remoteResetAt - resetAt > RESET_TOLERANCE) {
+                tokens = remaining; // the remote has started a new window
+            } else {
+                tokens = Math.min(tokens, remaining); // the requests still in flight have their tokens
+            }
+            resetAt = remoteResetAt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the remote said we are too fast (HTTP 429), no more request until the reset
+    public void limited(long resetNanos) {
+        rateLimited.incrementAndGet();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            tokens = 0;
+            long remoteResetAt = now + Math.max(resetNanos, 0L);
+            if (remoteResetAt - resetAt > 0) {
+                resetAt = remoteResetAt; // the reservations made before will get 429 again, then reserve a later window
+            }
+        } finally {
+            lock.unlock();
         }
-        availableTimes.addAndGet(-1);
+        client.getCore().getLogger().debug("Rate limited on bucket {}, reset after {} ms", name, TimeUnit.NANOSECONDS.toMillis(resetNanos));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    // the count of the requests which had to wait for a token
+    public long getDelayed() {
+        return delayed.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    // the count of the threads waiting for a token now
+    public int getWaiting() {
+        return waiting.get();
     }
 
     @Override
     public String toString() {
+        long delayed = getDelayed();
         return "Bucket{" +
                 "name=" + name + "," +
-                "availableTimes=" + availableTimes +
+                "requests=" + getRequests() + "," +
+                "delayed=" + delayed + "," +
+                "avgWait=" + (delayed == 0 ? 0 : getTotalWaitMillis() / delayed) + "ms," +
+                "maxWait=" + getMaxWaitMillis() + "ms," +
+                "waiting=" + getWaiting() + "," +
+                "429=" + getRateLimited() +
                 "}";
     }
 
-    public static Bucket get(KBCClient client, HttpAPIRoute route) {
+    public static Bucket get(KBCClient client, Map<String, Bucket> map, HttpAPIRoute route) {
         String bucketName = bucketNameMap.get(route);
         if (bucketName == null) {
             // This should never happen.
@@ -20,228 +20,553 @@ package snw.kookbc.impl.network;
 
 import okhttp3.Request;
 import okhttp3.WebSocket;
-import snw.jkook.util.Validate;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.util.LatencyHistogram;
 
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 // The Connector. It will communicate with Kook WebSocket Server.
+// The connection is a state machine driven by the callbacks from MessageProcessor and ListenerImpl.
+// All the state transitions and the timeouts run on one scheduled executor ("Connector Thread"),
+//  so nothing here needs a lock, and nothing waits by spinning.
+// The executor may be shared with the connectors of other clients (see SharedResources).
 public class Connector {
+    private static final long HELLO_TIMEOUT = 6000L;
+    private static final long RESUME_TIMEOUT = 6000L;
+    private static final long HEARTBEAT_INTERVAL = 30000L;
+    private static final int PING_ATTEMPTS = 3; // the first ping, then the retries
+    // used until we have enough RTT samples
+    private static final long DEFAULT_PONG_TIMEOUT = 6000L;
+    private static final int MIN_RTT_SAMPLES = 5;
+    private static final long MIN_PONG_TIMEOUT = 1000L;
+    // the RTT samples older than 1 to 2 windows are forgotten, so the timeout follows the network when it changes
+    private static final long RTT_WINDOW = TimeUnit.MINUTES.toNanos(10);
+    private static final long MAX_PONG_TIMEOUT = 15000L;
+    private static final int ATTEMPTS_PER_LINK = 2;
+    private static final long MAX_BACKOFF = 60000L;
+
     private final KBCClient kbcClient;
-    private String wsLink = "";
-    private WebSocket ws;
-    private volatile boolean firstConnected = false; // sub-threads should not work on startup
-    private volatile boolean connected = false;
+    private final ScheduledExecutorService executor;
+    private final boolean ownExecutor; // false if the executor is shared with other clients
+    private final FrameDecodeStage.Stats decodeStats = new FrameDecodeStage.Stats();
+    private final CompletableFuture<Void> firstConnect = new CompletableFuture<>();
+    private final LatencyHistogram rtt = new LatencyHistogram(); // the previous window and the current window
+    private final LatencyHistogram rttWindow = new LatencyHistogram(); // the current window only
+    private volatile State state = State.DISCONNECTED;
     private volatile boolean timeout = false;
-    private volatile boolean pingOk = false;
-    private volatile boolean requireReconnect = false;
-    private final Object reconnectLock = new Object();
+    private volatile boolean stopped = false;
+
+    // the following fields are only accessed on the executor thread
+    private String wsLink = "";
+    private volatile WebSocket ws; // also closed by shutdown()
+    private boolean resumeAttempt = false; // true if the current socket is trying to RESUME
+    private boolean resumable = false; // false if we must start a new session on next reconnect
+    private int attempts = 0; // the failed attempts on the current link
+    private int backoffLevel = 0;
+    private int connectAttempt = 0; // increased by each connect(), the gateway results of older attempts are ignored
+    private int pingAttempt = 0;
+    private long pingSentAt = 0L; // System.nanoTime() of the first PING (not the retries), 0 if no PING is waiting for PONG
+    private long rttWindowStart = System.nanoTime();
+    private long reconnectStart = 0L; // System.nanoTime() when the reconnect started, 0 if not reconnecting
+    private ScheduledFuture<?> timeoutTask;
+    private ScheduledFuture<?> heartbeatTask;
 
     public Connector(KBCClient kbcClient) {
         this.kbcClient = kbcClient;
-        new PingThread().start();
-        new Reconnector(kbcClient, reconnectLock).start();
-    }
-
-    // should only be called on startup
-    public void start() {
-        start0();
-        firstConnected = true;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Connector Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ownExecutor = true;
     }
 
-    private void start0() {
-        getGateway();
-        start1();
-    }
-
-    private void start1() {
-        do {
-            connected = false;
-            // if self connected is true, call shutdownHttp()
-            if (kbcClient.getNetworkClient().get(HttpAPIRoute.USER_ME.toFullURL()).get("online").getAsBoolean()) {
-                shutdownHttp();
-            }
-            int times = 0;
-            do {
-                ws = kbcClient.getNetworkClient().newWebSocket(
-                        new Request.Builder()
-                                .url(wsLink)
-                                .build(),
-                        new MessageProcessor(kbcClient)
-                );
-                long ts = System.currentTimeMillis();
-                while (System.currentTimeMillis() - ts < 6000L) {
-                    if (connected) {
-                        break;
-                    }
-                }
-                if (!connected) { // I WASTE 2 HOURS ON THIS
-                    shutdownWs();
-                    times++;
-                }
-            } while (!connected && times < 2);
-            if (!connected) { // if this round failed, then we need to get a new WS link
-                getGateway();
-            }
-        } while (!connected);
-        kbcClient.getCore().getLogger().info("WebSocket Connection OK");
+    // The executor must run the tasks on a single thread, it won't be shut down with this connector.
+    public Connector(KBCClient kbcClient, ScheduledExecutorService sharedExecutor) {
+        this.kbcClient = kbcClient;
+        this.executor = sharedExecutor;
+        this.ownExecutor = false;
     }
 
-    private void getGateway() {
-        wsLink = kbcClient.getNetworkClient().get(HttpAPIRoute.GATEWAY.toFullURL()).get("url").getAsString();
+    // should only be called on startup, returns after the first connection is established
+    public void start() {
+        executor.execute(this::connect);
+        try {
+            firstConnect.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the WebSocket connection", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to connect to the WebSocket server", e.getCause());
+        }
     }
 
     public void shutdown() {
+        state = State.DISCONNECTED;
+        stopped = true;
+        if (ownExecutor) {
+            executor.shutdownNow();
+        } else {
+            // the tasks already queued will see the stopped flag and do nothing,
+            //  the scheduled ones are removed from the shared executor here
+            try {
+                executor.execute(this::cancelTasks);
+            } catch (RejectedExecutionException ignored) {
+                // the shared executor is already shut down
+            }
+        }
         setTimeout(false);
         shutdownWs();
         shutdownHttp();
+        firstConnect.completeExceptionally(new CancellationException("The connector has been shut down"));
     }
 
-    private void shutdownWs() {
-        if (ws != null) {
-            ws.close(1000, "User Closed Service");
+    // region State transitions, must run on the executor thread
+
+    // start a new session from a fresh gateway link
+    private void connect() {
+        if (!isActive()) {
+            return;
         }
+        cancelTasks();
+        shutdownWs();
+        state = State.CONNECTING;
+        resumeAttempt = false;
+        if (!wsLink.isEmpty()) {
+            openSocket(wsLink);
+            return;
+        }
+        // The HTTP requests run on the OkHttp threads, only the result comes back to the executor,
+        //  so a slow API never holds the (maybe shared) executor thread.
+        int attempt = ++connectAttempt;
+        NetworkClient networkClient = kbcClient.getNetworkClient();
+        networkClient.getAsync(HttpAPIRoute.USER_ME.toFullURL())
+                .thenCompose(self -> {
+                    // if self connected is true, call the HTTP Bot offline API first
+                    if (self.get("online").getAsBoolean()) {
+                        return shutdownHttpAsync();
+                    }
+                    return CompletableFuture.completedFuture(null);
+                })
+                .thenCompose(ignored -> networkClient.getAsync(HttpAPIRoute.GATEWAY.toFullURL()))
+                .thenApply(gateway -> gateway.get("url").getAsString())
+                .whenComplete((url, e) -> submit(() -> gatewayFetched(attempt, url, e)));
     }
 
-    public void shutdownHttp() {
-        try {
-            kbcClient.getCore().getLogger().debug("Called HTTP Bot offline API. Response: {}", kbcClient.getNetworkClient().postContent(HttpAPIRoute.USER_BOT_OFFLINE.toFullURL(), "", ""));
-        } catch (Exception e) {
-            kbcClient.getCore().getLogger().error("Unexpected Exception when we attempting to request HTTP Bot offline API.", e);
+    private void gatewayFetched(int attempt, String url, Throwable e) {
+        if (attempt != connectAttempt || state != State.CONNECTING) {
+            return; // another connect() or a shutdown happened while we were waiting
         }
+        if (e != null) {
+            kbcClient.getCore().getLogger().error("Unable to get the WebSocket gateway.", e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            backoff();
+            return;
+        }
+        wsLink = url;
+        openSocket(wsLink);
     }
 
-    // following methods should be called by other class:
+    // try to continue the current session from the last SN we received,
+    //  the remote will send the messages we missed, then RESUME_ACK.
+    private void resume() {
+        String sessionId = kbcClient.getSession().getId();
+        if (!resumable || sessionId == null || wsLink.isEmpty()) {
+            newSession();
+            return;
+        }
+        cancelTasks();
+        shutdownWs();
+        resumeAttempt = true;
+        int sn = kbcClient.getSession().getSN().get();
+        kbcClient.getCore().getLogger().debug("Attempting to RESUME session {} from SN {}", sessionId, sn);
+        openSocket(wsLink + (wsLink.contains("?") ? "&" : "?") + "resume=1&sn=" + sn + "&session_id=" + sessionId);
+    }
 
-    public synchronized void restart() {
-        shutdown();
+    private void newSession() {
+        resumable = false;
         kbcClient.getSession().getSN().set(0);
-        kbcClient.getSession().getBuffer().clear();
-        start0();
+        // the buffered frames will never be handled, so the journal doesn't need to keep them
+        EventJournal journal = kbcClient.getEventJournal();
+        kbcClient.getSession().getBuffer().clear(frame -> {
+            if (journal != null) {
+                journal.complete(frame);
+            }
+        });
+        kbcClient.getSession().setId(null);
+        wsLink = "";
+        attempts = 0;
+        connect();
     }
 
-    public void setConnected(boolean connected) {
-        this.connected = connected;
+    private void openSocket(String url) {
+        state = State.HELLO;
+        ws = kbcClient.getNetworkClient().newWebSocket(
+                new Request.Builder()
+                        .url(url)
+                        .build(),
+                new MessageProcessor(kbcClient)
+        );
+        timeoutTask = schedule(this::helloTimeout, HELLO_TIMEOUT);
     }
 
-    public boolean isTimeout() {
-        return timeout;
+    private void helloTimeout() {
+        kbcClient.getCore().getLogger().warn("No HELLO received from remote in {} ms.", HELLO_TIMEOUT);
+        attemptFailed();
     }
 
-    public void setTimeout(boolean timeout) {
-        if (timeout) {
-            kbcClient.getCore().getLogger().warn("PING failed. Status is now TIMEOUT.");
+    // called when the current connection attempt (HELLO or RESUMING state) failed
+    private void attemptFailed() {
+        shutdownWs();
+        if (resumeAttempt) {
+            kbcClient.getCore().getLogger().warn("Unable to RESUME the session. We will start a new session.");
+            newSession();
+            return;
+        }
+        if (++attempts < ATTEMPTS_PER_LINK) {
+            connect(); // try the same link again
+        } else {
+            wsLink = ""; // this link does not work, get a new one on next attempt
+            attempts = 0;
+            backoff();
         }
-        this.timeout = timeout;
     }
 
-    public boolean isPingOk() {
-        return pingOk;
+    private void backoff() {
+        if (!isActive()) {
+            return;
+        }
+        state = State.BACKOFF;
+        long delay = Math.min(1000L << Math.min(backoffLevel++, 6), MAX_BACKOFF);
+        kbcClient.getCore().getLogger().info("We will try to connect again in {} ms.", delay);
+        timeoutTask = schedule(this::connect, delay);
     }
 
-    public void setPingOk(boolean pingOk) {
-        this.pingOk = pingOk;
+    private void hello0(int code, String sessionId) {
+        if (state != State.HELLO) {
+            kbcClient.getCore().getLogger().debug("Unexpected HELLO in state {}, ignored.", state);
+            return;
+        }
+        cancelTasks();
+        if (code != 0) {
+            kbcClient.getCore().getLogger().warn("Got HELLO with non-zero code {}, we will start a new session.", code);
+            if (resumeAttempt) {
+                newSession();
+            } else {
+                resumable = false;
+                attemptFailed();
+            }
+            return;
+        }
+        if (resumeAttempt) {
+            state = State.RESUMING;
+            int sn = kbcClient.getSession().getSN().get();
+            if (!ws.send(String.format("{\"s\":4,\"sn\":%s}", sn))) {
+                attemptFailed();
+                return;
+            }
+            timeoutTask = schedule(() -> {
+                kbcClient.getCore().getLogger().warn("No RESUME_ACK received from remote in {} ms.", RESUME_TIMEOUT);
+                attemptFailed();
+            }, RESUME_TIMEOUT);
+        } else {
+            kbcClient.getSession().setId(sessionId);
+            live();
+        }
     }
 
-    public void ping() {
-        if (!kbcClient.isRunning()) {
-            throw new RuntimeException("The client is not running! (If you see this when the client is stopping, please ignore this)");
+    private void resumeAck0(String sessionId) {
+        if (state != State.RESUMING) {
+            kbcClient.getCore().getLogger().debug("Unexpected RESUME_ACK in state {}, ignored.", state);
+            return;
         }
-        if (!connected) { // Let PING Thread wait until the connector success.
-            setTimeout(false);
-            setPingOk(true);
+        cancelTasks();
+        kbcClient.getSession().setId(sessionId);
+        live();
+    }
+
+    private void live() {
+        state = State.LIVE;
+        attempts = 0;
+        backoffLevel = 0;
+        resumable = true;
+        setTimeout(false);
+        if (reconnectStart != 0L) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reconnectStart);
+            if (resumeAttempt) {
+                kbcClient.getCore().getLogger().info("Session resumed in {} ms", elapsed);
+            } else {
+                kbcClient.getCore().getLogger().info("Reconnected with a new session in {} ms", elapsed);
+            }
+            reconnectStart = 0L;
+        } else {
+            kbcClient.getCore().getLogger().info("WebSocket Connection OK");
+        }
+        resumeAttempt = false;
+        firstConnect.complete(null);
+        heartbeatTask = schedule(this::heartbeat, HEARTBEAT_INTERVAL);
+    }
+
+    private void heartbeat() {
+        if (state != State.LIVE) {
             return;
         }
+        pingAttempt = 0;
+        ping();
+    }
+
+    private void ping() {
         kbcClient.getCore().getLogger().debug("Attempting to PING.");
-        setPingOk(false);
-        boolean queued = ws.send(String.format("{\"s\":2,\"sn\":%s}", kbcClient.getSession().getSN().get()));
-        Validate.isTrue(queued, "Unable to queue ping request");
+        if (pingAttempt == 0) {
+            pingSentAt = System.nanoTime();
+        }
+        if (!ws.send(String.format("{\"s\":2,\"sn\":%s}", kbcClient.getSession().getSN().get()))) {
+            kbcClient.getCore().getLogger().warn("Unable to queue ping request. Attempting to reconnect.");
+            reconnect0(true);
+            return;
+        }
+        timeoutTask = schedule(this::pongTimeout, getPongTimeout(pingAttempt));
     }
 
-    public void pong() {
-        setPingOk(true);
-        if (isTimeout()) {
-            setTimeout(false);
+    // The time we will wait for PONG.
+    // Derived from the observed RTT (about 4 times of p99), so we can notice a dead connection
+    //  on a fast network sooner, and won't give up too early on a slow network.
+    // The retries wait 1/3 and 2/3 of the first timeout.
+    long getPongTimeout(int attempt) {
+        long base = DEFAULT_PONG_TIMEOUT;
+        if (rtt.getCount() >= MIN_RTT_SAMPLES) {
+            base = rtt.getPercentileMillis(0.99) * 4 + 500L;
         }
+        long result = attempt == 0 ? base : base * attempt / 3;
+        return Math.max(MIN_PONG_TIMEOUT, Math.min(result, MAX_PONG_TIMEOUT));
     }
 
-    public void requestReconnect() {
-        if (!requireReconnect) {
-            synchronized (reconnectLock) {
-                if (!requireReconnect) {
-                    requireReconnect = true;
-                    connected = false;
-                    reconnectLock.notifyAll();
-                }
+    private void pongTimeout() {
+        if (state != State.LIVE) {
+            return;
+        }
+        setTimeout(true);
+        if (++pingAttempt < PING_ATTEMPTS) {
+            ping();
+        } else {
+            kbcClient.getCore().getLogger().warn("PING failed. Attempting to reconnect.");
+            reconnect0(true);
+        }
+    }
+
+    private void pong0(long receivedAt) {
+        if (state != State.LIVE) {
+            return;
+        }
+        // PONG does not tell which PING it answers, so it is measured from the first PING.
+        // After retries this may be longer than the real RTT, but dropping the slow samples would hide a slow network.
+        if (pingSentAt != 0L) {
+            long elapsed = receivedAt - pingSentAt;
+            recordRtt(receivedAt, elapsed);
+            kbcClient.getCore().getLogger().debug("Got PONG in {} ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        pingSentAt = 0L;
+        cancelTasks();
+        setTimeout(false);
+        heartbeatTask = schedule(this::heartbeat, HEARTBEAT_INTERVAL);
+    }
+
+    private void recordRtt(long now, long elapsed) {
+        if (now - rttWindowStart >= RTT_WINDOW) {
+            // the current window becomes the previous one, unless it ended long ago
+            rtt.reset();
+            if (now - rttWindowStart < RTT_WINDOW * 2) {
+                rtt.add(rttWindow);
             }
+            rttWindow.reset();
+            rttWindowStart = now;
         }
+        rttWindow.record(elapsed, TimeUnit.NANOSECONDS);
+        rtt.record(elapsed, TimeUnit.NANOSECONDS);
     }
 
-    public KBCClient getParent() {
-        return kbcClient;
+    private void reconnect0(boolean allowResume) {
+        if (!isActive() || !firstConnect.isDone()) {
+            return;
+        }
+        if (state != State.LIVE) {
+            // the connection attempt in progress will handle this
+            return;
+        }
+        reconnectStart = System.nanoTime();
+        if (allowResume) {
+            resume();
+        } else {
+            newSession();
+        }
     }
 
-    public void reconnectOk() {
-        requireReconnect = false;
+    private void failure0(WebSocket webSocket) {
+        if (webSocket != ws) {
+            return; // an old connection, we don't care
+        }
+        switch (state) {
+            case HELLO:
+            case RESUMING:
+                attemptFailed();
+                break;
+            case LIVE:
+                reconnect0(true);
+                break;
+            default:
+                break;
+        }
     }
 
-    public boolean isRequireReconnect() {
-        return requireReconnect && firstConnected;
+    // endregion
+
+    // region Callbacks, can be called from any thread
+
+    // called when HELLO received
+    public void hello(int code, String sessionId) {
+        submit(() -> hello0(code, sessionId));
     }
 
-    public boolean isConnected() {
-        return connected;
+    // called when RESUME_ACK received
+    public void resumeAck(String sessionId) {
+        submit(() -> resumeAck0(sessionId));
     }
 
-    protected class PingThread extends Thread {
+    // called when PONG received
+    public void pong() {
+        long receivedAt = System.nanoTime(); // before queued, so the time waiting in the queue is not counted
+        submit(() -> pong0(receivedAt));
+    }
 
-        public PingThread() {
-            super("Ping Thread");
-            this.setDaemon(true);
+    // called when the remote wants us to start a new session (RECONNECT received)
+    public void reconnectRequested() {
+        submit(() -> {
+            resumable = false;
+            if (state == State.LIVE) {
+                reconnect0(false);
+            } else if (state == State.HELLO || state == State.RESUMING) {
+                attemptFailed();
+            }
+        });
+    }
+
+    // called when the WebSocket connection failed
+    public void failure(WebSocket webSocket) {
+        submit(() -> failure0(webSocket));
+    }
+
+    // endregion
+
+    private void shutdownWs() {
+        if (ws != null) {
+            ws.close(1000, "User Closed Service");
+            ws = null;
         }
+    }
 
-        @Override
-        public void run() {
-            try {
-                run0();
-            } catch (InterruptedException ignored) {
-            } catch (Throwable e) {
-                kbcClient.getCore().getLogger().error("PING Thread terminated by critical exception.", e);
-            }
+    public void shutdownHttp() {
+        try {
+            kbcClient.getCore().getLogger().debug("Called HTTP Bot offline API. Response: {}", kbcClient.getNetworkClient().postContent(HttpAPIRoute.USER_BOT_OFFLINE.toFullURL(), "", ""));
+        } catch (Exception e) {
+            kbcClient.getCore().getLogger().error("Unexpected Exception when we attempting to request HTTP Bot offline API.", e);
         }
+    }
 
-        private void run0() throws InterruptedException {
-            while (kbcClient.isRunning()) {
-                sleep(30);
-                if (!connected) continue;
-                ping();
-                sleep(6);
-                if (isTimeout()) {
-                    int times = 0;
-                    do {
-                        ping();
-                        sleep(++times == 1 ? 2 : 4);
-                        if (isPingOk()) {
-                            break; // why should I ping again????
-                        }
-                    } while (times < 2);
-                    if (Thread.currentThread().isInterrupted()) {
-                        return;
-                    }
-                    if (!isPingOk()) {
-                        kbcClient.getCore().getLogger().warn("PING failed. Attempting to reconnect.");
-                        requestReconnect();
-                        // actually, we should try to RESUME at this time.
-                        // but RESUME always fail (e.g. received RECONNECT after RESUME_ACK)
-                        // so we won't support RESUME until the problem be solved.
+    private CompletableFuture<Void> shutdownHttpAsync() {
+        return kbcClient.getNetworkClient().postContentAsync(HttpAPIRoute.USER_BOT_OFFLINE.toFullURL(), "", "")
+                .handle((response, e) -> {
+                    if (e != null) {
+                        kbcClient.getCore().getLogger().error("Unexpected Exception when we attempting to request HTTP Bot offline API.", e);
+                    } else {
+                        kbcClient.getCore().getLogger().debug("Called HTTP Bot offline API. Response: {}", response);
                     }
+                    return null;
+                });
+    }
+
+    private boolean isActive() {
+        return kbcClient.isRunning() && !stopped;
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(() -> {
+                if (stopped) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    kbcClient.getCore().getLogger().error("Unexpected exception in the Connector.", e);
                 }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // we are stopping
+        }
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return executor.schedule(() -> {
+            if (stopped) {
+                return;
             }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                kbcClient.getCore().getLogger().error("Unexpected exception in the Connector.", e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTasks() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+            timeoutTask = null;
         }
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+    }
+
+    public boolean isTimeout() {
+        return timeout;
+    }
 
-        private void sleep(int sec) throws InterruptedException {
-            Thread.sleep(TimeUnit.SECONDS.toMillis(sec));
-            if (!kbcClient.isRunning()) throw new InterruptedException();
+    private void setTimeout(boolean timeout) {
+        if (timeout && !this.timeout) {
+            kbcClient.getCore().getLogger().warn("PING failed. Status is now TIMEOUT.");
         }
+        this.timeout = timeout;
+    }
+
+    // the counters of the frames passed through the decode queues of all the connections
+    public FrameDecodeStage.Stats getDecodeStats() {
+        return decodeStats;
+    }
+
+    // the round-trip time of PING/PONG in the last 10 to 20 minutes
+    public LatencyHistogram getLatency() {
+        return rtt;
+    }
+
+    public KBCClient getParent() {
+        return kbcClient;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return state == State.LIVE;
+    }
+
+    public enum State {
+        DISCONNECTED, // not started, or stopped
+        CONNECTING, // getting the gateway link
+        HELLO, // the WebSocket is opening, waiting for HELLO
+        RESUMING, // RESUME sent, waiting for RESUME_ACK
+        LIVE, // connected, the heartbeat is running
+        BACKOFF // waiting before the next connection attempt
     }
 }
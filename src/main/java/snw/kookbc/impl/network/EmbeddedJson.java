@@ -0,0 +1,49 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.google.gson.JsonElement;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// A JSON value which the API wants as a string field, e.g. the content of a card message.
+// JsonBody writes it into the request body as an escaped string in one pass,
+//  so the JSON text is never built as a String and then escaped again.
+public final class EmbeddedJson {
+    private final JsonElement value;
+
+    public EmbeddedJson(JsonElement value) {
+        this.value = value;
+    }
+
+    public JsonElement getValue() {
+        return value;
+    }
+
+    void writeTo(Writer out) throws IOException {
+        JsonBody.GSON.toJson(value, out);
+    }
+
+    // the JSON text, for the callers who need it as a string
+    @Override
+    public String toString() {
+        return JsonBody.GSON.toJson(value);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+// An append-only journal of the received events, so they can be processed at least once.
+// The events are appended before they are acknowledged and dispatched, and marked as completed after they are handled.
+// The journal is made of memory-mapped segment files, which are pre-allocated with zeros.
+// A record is invisible until its length (the first field) is written, and its CRC32 detects torn writes.
+// The completion is recorded as COMMIT records carrying the watermark, that is, the highest ID
+//  whose event and all the events before it are completed.
+// On start, the events above the last watermark are loaded, and should be replayed by the caller.
+public class EventJournal implements Closeable {
+    private static final byte TYPE_EVENT = 1;
+    private static final byte TYPE_COMMIT = 2;
+    private static final int HEADER_SIZE = 17; // length (int), CRC32 (int), type (byte), ID (long)
+    private static final int COMMIT_EVERY = 256; // completions
+    private static final String SUFFIX = ".journal";
+
+    private final Logger logger;
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>(); // oldest first
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final AtomicInteger completedSinceCommit = new AtomicInteger();
+    private final CRC32 crc = new CRC32();
+    private final List<Frame> recovered = new ArrayList<>();
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private long nextId = 1;
+    private long committed = 0;
+    private boolean closed = false;
+
+    public EventJournal(Logger logger, File directory, int segmentSize, int maxSegments) throws IOException {
+        this.logger = logger;
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, 4096);
+        this.maxSegments = Math.max(maxSegments, 2);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the journal directory " + directory);
+        }
+        recover();
+        roll();
+    }
+
+    // the events which were not completed in the last run, in the order they were received
+    public synchronized List<Frame> takeRecovered() {
+        List<Frame> result = new ArrayList<>(recovered);
+        recovered.clear();
+        return result;
+    }
+
+    // the frame will be given an ID, and must be completed after it is handled or discarded
+    public synchronized void append(Frame frame) throws IOException {
+        if (closed) {
+            return;
+        }
+        byte[] payload = frame.toJson().getBytes(StandardCharsets.UTF_8);
+        long id = nextId;
+        if (buffer.remaining() < HEADER_SIZE + payload.length + 4) { // keep 4 zero bytes as the end mark
+            roll(HEADER_SIZE * 2 + payload.length + 4);
+        }
+        write(TYPE_EVENT, id, payload);
+        nextId++;
+        segments.getLast().lastId = id;
+        inFlight.add(id);
+        frame.setJournalId(id);
+    }
+
+    public void complete(Frame frame) {
+        long id = frame.getJournalId();
+        if (id <= 0 || !inFlight.remove(id)) {
+            return;
+        }
+        if (completedSinceCommit.incrementAndGet() >= COMMIT_EVERY) {
+            commit();
+        }
+    }
+
+    // record the watermark, should be called periodically
+    public synchronized void commit() {
+        if (closed) {
+            return;
+        }
+        completedSinceCommit.set(0);
+        long watermark = getWatermark();
+        if (watermark <= committed) {
+            return;
+        }
+        if (buffer.remaining() < HEADER_SIZE + 4) {
+            try {
+                roll(); // the new segment starts with a COMMIT record
+            } catch (IOException e) {
+                logger.warn("Unable to roll the event journal", e);
+            }
+            return;
+        }
+        write(TYPE_COMMIT, watermark, new byte[0]);
+        committed = watermark;
+    }
+
+    // commit and sync to the disk, should be called periodically
+    public synchronized void flush() {
+        commit();
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    private long getWatermark() {
+        return inFlight.isEmpty() ? nextId - 1 : inFlight.first() - 1;
+    }
+
+    private void write(byte type, long id, byte[] payload) {
+        int start = buffer.position();
+        int checksum = checksum(type, id, payload);
+        buffer.position(start + 4);
+        buffer.putInt(checksum);
+        buffer.put(type);
+        buffer.putLong(id);
+        buffer.put(payload);
+        buffer.putInt(start, payload.length + 1); // written last, so the record is invisible until now. +1 to keep 0 as the end mark
+    }
+
+    private int checksum(byte type, long id, byte[] payload) {
+        crc.reset();
+        crc.update(type);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (id >>> shift));
+        }
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private void roll() throws IOException {
+        roll(0);
+    }
+
+    private void roll(int required) throws IOException {
+        closeSegment();
+        File segmentFile = new File(directory, String.format("%020d", nextId) + SUFFIX);
+        if (segments.removeIf(it -> it.file.equals(segmentFile))) {
+            // no event was appended to it (or it would have another name), so it only has the old watermark
+            Files.delete(segmentFile.toPath());
+        }
+        file = new RandomAccessFile(segmentFile, "rw");
+        int size = Math.max(segmentSize, required);
+        file.setLength(size); // filled with zeros
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        Segment segment = new Segment(segmentFile);
+        segment.lastId = nextId - 1;
+        segments.addLast(segment);
+        committed = getWatermark();
+        write(TYPE_COMMIT, committed, new byte[0]); // so the watermark is kept after the old segments are deleted
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.removeFirst();
+            if (oldest.lastId > committed) {
+                logger.warn("Deleting the journal segment {} which has unprocessed events because of the retention limit.", oldest.file.getName());
+            }
+            if (!oldest.file.delete()) {
+                logger.warn("Unable to delete the journal segment {}", oldest.file.getName());
+            }
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (file != null) {
+            buffer.force();
+            file.close(); // the mapping is released when the buffer is collected
+            file = null;
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName)); // the names are zero-padded IDs
+        long maxId = 0;
+        TreeMap<Long, byte[]> events = new TreeMap<>();
+        for (File segmentFile : files) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segmentFile.toPath()));
+            Segment segment = new Segment(segmentFile);
+            while (data.remaining() >= HEADER_SIZE) {
+                int start = data.position();
+                int length = data.getInt(start) - 1;
+                if (length < 0 || HEADER_SIZE + length > data.remaining()) {
+                    break; // end of the segment, or a torn write
+                }
+                int checksum = data.getInt(start + 4);
+                byte type = data.get(start + 8);
+                long id = data.getLong(start + 9);
+                byte[] payload = new byte[length];
+                data.position(start + HEADER_SIZE);
+                data.get(payload);
+                if (checksum(type, id, payload) != checksum) {
+                    logger.warn("Corrupted record in the journal segment {}, the rest of it is ignored.", segmentFile.getName());
+                    break;
+                }
+                if (type == TYPE_EVENT) {
+                    events.put(id, payload);
+                    maxId = Math.max(maxId, id);
+                    segment.lastId = Math.max(segment.lastId, id);
+                } else if (type == TYPE_COMMIT) {
+                    committed = Math.max(committed, id);
+                }
+            }
+            segments.addLast(segment);
+        }
+        nextId = Math.max(maxId, committed) + 1;
+        for (Map.Entry<Long, byte[]> entry : events.tailMap(committed, false).entrySet()) {
+            try {
+                Frame frame = FrameDecoder.readFrame(new StringReader(new String(entry.getValue(), StandardCharsets.UTF_8)));
+                frame.setJournalId(entry.getKey());
+                inFlight.add(entry.getKey());
+                recovered.add(frame);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to read the event {} from the journal, skipped.", entry.getKey(), e);
+            }
+        }
+        if (!recovered.isEmpty()) {
+            logger.info("Found {} unprocessed event(s) in the journal.", recovered.size());
+        }
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public synchronized long getCommitted() {
+        return committed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        commit();
+        closed = true;
+        closeSegment();
+    }
+
+    private static class Segment {
+        final File file;
+        long lastId = 0;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+}
@@ -27,6 +27,8 @@ public class Frame {
     private final MessageType type;
     private final int sn;
     private final JsonObject d;
+    private final long receivedAt = System.nanoTime(); // for measuring the latency of processing
+    private volatile long journalId = -1; // -1 if it is not in the journal
 
     public Frame(int s, int sn, JsonObject d) {
         this.type = Objects.requireNonNull(MessageType.valueOf(s));
@@ -46,6 +48,24 @@ public class Frame {
         return d;
     }
 
+    // the value of System.nanoTime() when this frame was decoded
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    // the same format as the payload from remote, so it can be read by FrameDecoder
+    public String toJson() {
+        return "{\"s\":" + type.getType() + ",\"sn\":" + sn + ",\"d\":" + d + "}";
+    }
+
+    public long getJournalId() {
+        return journalId;
+    }
+
+    void setJournalId(long journalId) {
+        this.journalId = journalId;
+    }
+
     @Override
     public String toString() {
         return "Frame{" +
@@ -0,0 +1,127 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+// The reorder window for the frames that arrived earlier than expected.
+// The frames are stored in a fixed-capacity ring indexed by (sn & 0xFFFF),
+//  so storing, finding and removing a frame costs O(1).
+// The occupied slots are also tracked in a BitSet, so finding the next buffered SN scans words instead of slots.
+// The SN sequence goes from 1 to 65535, then wraps to 1 again.
+public class FrameBuffer {
+    public static final int MAX_SN = 65535;
+    // the frames with a distance from the expected SN larger than this are regarded as old frames
+    public static final int WINDOW = MAX_SN / 2;
+
+    private final Frame[] frames = new Frame[MAX_SN + 1];
+    private final BitSet occupied = new BitSet(MAX_SN + 1);
+    private int size = 0;
+    private long gapSince = 0L; // System.nanoTime() of the moment we started waiting for the missing SN
+
+    public static int nextSN(int sn) {
+        return sn >= MAX_SN ? 1 : sn + 1;
+    }
+
+    public static int previousSN(int sn) {
+        return sn <= 1 ? MAX_SN : sn - 1;
+    }
+
+    // the steps from "from" to "to" in the SN sequence, both arguments should be a valid SN
+    public static int distance(int from, int to) {
+        return ((to - from) % MAX_SN + MAX_SN) % MAX_SN;
+    }
+
+    public static boolean isValidSN(int sn) {
+        return sn >= 1 && sn <= MAX_SN;
+    }
+
+    // return false if a frame with the same SN is already buffered
+    public synchronized boolean add(Frame frame) {
+        int index = frame.getSN() & 0xFFFF;
+        if (frames[index] != null) {
+            return false;
+        }
+        frames[index] = frame;
+        occupied.set(index);
+        if (size++ == 0) {
+            gapSince = System.nanoTime();
+        }
+        return true;
+    }
+
+    // remove the frame with the provided SN and return it, or null if not buffered
+    public synchronized Frame poll(int sn) {
+        int index = sn & 0xFFFF;
+        Frame frame = frames[index];
+        if (frame != null) {
+            frames[index] = null;
+            occupied.clear(index);
+            size--;
+        }
+        return frame;
+    }
+
+    // find the nearest buffered SN after the provided SN, or -1 if the buffer is empty
+    public synchronized int nextBufferedSN(int sn) {
+        if (size == 0) {
+            return -1;
+        }
+        int next = occupied.nextSetBit(sn + 1);
+        if (next < 0) {
+            next = occupied.nextSetBit(1); // wrap around, SN 0 does not exist
+        }
+        return next;
+    }
+
+    // called when the expected SN was processed, so we will restart the gap timer for the next missing SN
+    public synchronized void resetGapTimer() {
+        gapSince = System.nanoTime();
+    }
+
+    // the time in milliseconds we have waited for the missing SN, 0 if nothing is buffered
+    public synchronized long getGapMillis() {
+        return size == 0 ? 0L : (System.nanoTime() - gapSince) / 1_000_000L;
+    }
+
+    // the count of the frames currently waiting in this buffer
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getCapacity() {
+        return MAX_SN;
+    }
+
+    // remove all the frames, each removed frame is passed to the consumer
+    public synchronized void clear(Consumer<Frame> removed) {
+        for (int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i + 1)) {
+            Frame frame = frames[i];
+            frames[i] = null;
+            size--;
+            removed.accept(frame);
+        }
+        occupied.clear();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import okio.ByteString;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.util.SpscRingBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// The stage between the WebSocket reader thread and the payload decoding.
+// The reader thread only puts the raw payloads (String or ByteString) into a bounded SPSC ring,
+//  then the decode thread takes them out and processes them,
+//  so the socket reads won't stall while the decoding is slow.
+// One instance belongs to one connection, because the reader thread of a connection is the only producer.
+public class FrameDecodeStage {
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // how much of the payload is looked at to find the signal type ("s"), it is the first field in practice
+    private static final int PEEK_CHARS = 32;
+    private static final int PEEK_COMPRESSED_BYTES = 512;
+
+    private final KBCClient client;
+    private final SpscRingBuffer<Object> ring;
+    private final OverflowPolicy policy;
+    private final Consumer<Object> handler;
+    private final Runnable onStop;
+    private final Stats stats;
+    private final Thread thread;
+    private volatile boolean waiting = false;
+    private volatile boolean closed = false;
+    private boolean overflowing = false; // producer only
+    // used to peek the compressed payloads when the ring is full, producer only
+    private Inflater peekInflater;
+    private byte[] peekInput;
+    private byte[] peekOutput;
+
+    public FrameDecodeStage(KBCClient client, int capacity, OverflowPolicy policy, Stats stats, Consumer<Object> handler, Runnable onStop) {
+        this.client = client;
+        this.ring = new SpscRingBuffer<>(capacity);
+        this.policy = policy;
+        this.stats = stats;
+        this.handler = handler;
+        this.onStop = onStop;
+        this.thread = new Thread(this::run, "Frame Decoder Thread");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // called by the WebSocket reader thread only
+    public void offer(Object payload) {
+        if (closed) {
+            return;
+        }
+        if (!ring.offer(payload)) {
+            // only the events can be dropped, losing PONG, HELLO, RESUME_ACK or RECONNECT breaks the connection
+            if (policy == OverflowPolicy.DROP && isEvent(payload)) {
+                stats.dropped.incrementAndGet();
+                if (!overflowing) {
+                    overflowing = true;
+                    client.getCore().getLogger().warn("The frame decode queue is full (capacity {}), dropping the new events.", ring.capacity());
+                }
+                return;
+            }
+            if (policy == OverflowPolicy.DROP) {
+                stats.controlBlocked.incrementAndGet();
+            } else {
+                stats.blocked.incrementAndGet();
+            }
+            // wait for the decode thread, so the remote will slow down because we stop reading
+            do {
+                if (closed) {
+                    return;
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            } while (!ring.offer(payload));
+        }
+        overflowing = false;
+        stats.queued.incrementAndGet();
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Returns true only if the payload is surely an EVENT (s = 0), anything we can't tell is kept.
+    // Only called when the ring is full, so the inflater is not touched on the normal path.
+    private boolean isEvent(Object payload) {
+        if (payload instanceof String) {
+            String text = (String) payload;
+            return isEvent(text.substring(0, Math.min(text.length(), PEEK_CHARS)));
+        }
+        ByteString bytes = (ByteString) payload;
+        if (peekInflater == null) {
+            peekInflater = new Inflater();
+            peekInput = new byte[PEEK_COMPRESSED_BYTES];
+            peekOutput = new byte[PEEK_CHARS];
+        }
+        int size = Math.min(bytes.size(), peekInput.length);
+        bytes.asByteBuffer().get(peekInput, 0, size);
+        peekInflater.reset();
+        peekInflater.setInput(peekInput, 0, size);
+        int length;
+        try {
+            length = peekInflater.inflate(peekOutput);
+        } catch (DataFormatException e) {
+            return false; // let the decoder report it
+        }
+        return isEvent(new String(peekOutput, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    // looks for the first "s" field of the top level object in the head of the JSON text
+    static boolean isEvent(String head) {
+        int index = head.indexOf("\"s\"");
+        if (index < 0 || head.lastIndexOf('{', index) != head.indexOf('{')) {
+            return false;
+        }
+        index += 3;
+        while (index < head.length() && (head.charAt(index) == ':' || Character.isWhitespace(head.charAt(index)))) {
+            index++;
+        }
+        return index + 1 < head.length() && head.charAt(index) == '0' && !Character.isDigit(head.charAt(index + 1));
+    }
+
+    // the frames already queued will still be processed
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    public int size() {
+        return ring.size();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Object payload = ring.poll();
+                if (payload == null) {
+                    if (closed) {
+                        break;
+                    }
+                    waiting = true;
+                    // check again, the producer may have offered before it saw the flag
+                    if (ring.isEmpty() && !closed) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    waiting = false;
+                    continue;
+                }
+                try {
+                    handler.accept(payload);
+                } catch (Throwable e) {
+                    client.getCore().getLogger().error("Unexpected exception while we processing the frame from remote.", e);
+                }
+            }
+        } finally {
+            onStop.run();
+        }
+    }
+
+    public enum OverflowPolicy {
+        BLOCK, // stop reading the socket until the decode thread catches up
+        // drop the new events, the missing SN will be skipped after sn-gap-timeout.
+        // the other signals (and the payloads whose type can't be peeked) wait like BLOCK, they have no SN to skip
+        DROP;
+
+        public static OverflowPolicy of(String name) {
+            return "drop".equalsIgnoreCase(name) ? DROP : BLOCK;
+        }
+    }
+
+    // The counters shared by all the decode stages of a client.
+    public static class Stats {
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong blocked = new AtomicLong();
+        private final AtomicLong controlBlocked = new AtomicLong();
+
+        public long getQueued() {
+            return queued.get();
+        }
+
+        // only the events are dropped
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        // the count of the times the reader thread had to wait because the queue is full
+        public long getBlocked() {
+            return blocked.get();
+        }
+
+        // the count of the times a non-event signal found the queue full under the DROP policy,
+        //  it was kept and the reader thread waited for it
+        public long getControlBlocked() {
+            return controlBlocked.get();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Decodes the payloads from remote into Frame objects in one pass.
+// The compressed payload is inflated straight into the JSON reader,
+//  so no intermediate byte array or String of the whole message will be created.
+// The Inflater and the input buffer are reused, so one decoder should be used by one thread only.
+// (e.g. one decoder per WebSocket connection, OkHttp delivers the messages of a connection sequentially)
+public class FrameDecoder {
+    private final Inflater inflater = new Inflater();
+    private final InflatingStream inflatingStream = new InflatingStream();
+    private byte[] input = new byte[8192];
+
+    // for compressed messages
+    public Frame decode(ByteString bytes) throws IOException {
+        int size = bytes.size();
+        if (input.length < size) {
+            input = new byte[Math.max(size, input.length << 1)];
+        }
+        bytes.asByteBuffer().get(input, 0, size);
+        return decodeDeflate(input, 0, size);
+    }
+
+    // the data will be read directly, so the caller should not modify it until this method returns
+    public Frame decodeDeflate(byte[] data, int offset, int length) throws IOException {
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        return decode(new InputStreamReader(inflatingStream, StandardCharsets.UTF_8));
+    }
+
+    // for non-compressed messages
+    public Frame decode(String text) throws IOException {
+        return decode(new StringReader(text));
+    }
+
+    public Frame decode(Reader reader) throws IOException {
+        return readFrame(reader);
+    }
+
+    // stateless, so it can be used without a decoder
+    public static Frame readFrame(Reader reader) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        int s = -1;
+        int sn = -1;
+        JsonObject d = null;
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "s":
+                        s = jsonReader.nextInt();
+                        break;
+                    case "sn":
+                        if (jsonReader.peek() == JsonToken.NULL) {
+                            jsonReader.nextNull();
+                        } else {
+                            sn = jsonReader.nextInt();
+                        }
+                        break;
+                    case "d":
+                        JsonElement element = JsonParser.parseReader(jsonReader);
+                        d = element.isJsonObject() ? element.getAsJsonObject() : null;
+                        break;
+                    default:
+                        jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException("Malformed frame", e);
+        }
+        if (s == -1) {
+            throw new JsonParseException("No frame type provided");
+        }
+        return new Frame(s, sn, d);
+    }
+
+    // Release the native resources of the Inflater. This decoder can't be used after this call.
+    public void close() {
+        inflater.end();
+    }
+
+    private class InflatingStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                int n;
+                while ((n = inflater.inflate(b, off, len)) == 0) {
+                    if (inflater.finished() || inflater.needsInput()) {
+                        return -1; // the whole input is provided at once, so no more input means the end
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Unexpected preset dictionary");
+                    }
+                }
+                return n;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import snw.jkook.config.ConfigurationSection;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Builds the OkHttpClient used by every HTTP consumer (the API calls, the WebSocket, the update checker, etc.)
+//  from the "http-*" options in kbc.yml.
+// The clients with the same options share one OkHttpClient, so they share the connection pool and the dispatcher.
+// Use OkHttpClient#newBuilder to change a setting for one consumer, the pool and the dispatcher are still shared.
+public final class HttpTransport {
+    private static final Map<String, OkHttpClient> clients = new HashMap<>();
+
+    private HttpTransport() {
+    }
+
+    public static synchronized OkHttpClient get(ConfigurationSection config) {
+        int maxIdle = config.getInt("http-pool-max-idle", 5);
+        long keepAlive = config.getLong("http-pool-keep-alive", 300L);
+        int maxRequests = config.getInt("http-max-requests", 64);
+        int maxRequestsPerHost = config.getInt("http-max-requests-per-host", 5);
+        String protocol = config.getString("http-protocol", "auto");
+        long connectTimeout = config.getLong("http-connect-timeout", 10000L);
+        long readTimeout = config.getLong("http-read-timeout", 10000L);
+        long writeTimeout = config.getLong("http-write-timeout", 10000L);
+        long callTimeout = config.getLong("http-call-timeout", 0L);
+        boolean compression = config.getBoolean("http-compression", true);
+
+        String key = maxIdle + "," + keepAlive + "," + maxRequests + "," + maxRequestsPerHost + "," + protocol + "," +
+                connectTimeout + "," + readTimeout + "," + writeTimeout + "," + callTimeout + "," + compression;
+        OkHttpClient client = clients.get(key);
+        if (client != null) {
+            return client;
+        }
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdle, keepAlive, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .protocols(parseProtocols(protocol))
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(writeTimeout, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeout, TimeUnit.MILLISECONDS);
+        if (!compression) {
+            // OkHttp asks for gzip and decompresses it transparently if there is no Accept-Encoding header.
+            // It is added before the network interceptors run, so this must be an application interceptor.
+            builder.addInterceptor(chain -> chain.proceed(
+                    chain.request().header("Accept-Encoding") == null
+                            ? chain.request().newBuilder().header("Accept-Encoding", "identity").build()
+                            : chain.request()
+            ));
+        }
+        client = builder.build();
+        clients.put(key, client);
+        return client;
+    }
+
+    private static List<Protocol> parseProtocols(String value) {
+        switch (value.toLowerCase()) {
+            case "http1.1":
+            case "http/1.1":
+                return Collections.singletonList(Protocol.HTTP_1_1);
+            case "h2-prior-knowledge":
+                return Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE); // cleartext HTTP/2, for the local servers
+            case "auto":
+            case "h2":
+                return Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1); // HTTP/2 if the server supports it
+            default:
+                throw new IllegalArgumentException("Unknown http-protocol: " + value);
+        }
+    }
+}
@@ -20,43 +20,52 @@ package snw.kookbc.impl.network;
 
 import snw.kookbc.impl.KBCClient;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
-
 public class IgnoreSNListenerImpl extends ListenerImpl {
-    private final List<Integer> processedSN = new LinkedList<>();
+    // The sliding window of the recently processed SN.
+    // The bitset answers "is this SN processed?" in O(1),
+    //  and the ring remembers the order, so the oldest SN can be evicted when the window is full.
+    private final long[] processedBits = new long[(FrameBuffer.MAX_SN >> 6) + 1];
+    private final int[] window;
+    private int windowPos = 0;
 
     public IgnoreSNListenerImpl(KBCClient client) {
         super(client);
-        new Thread(() -> {
-            while (client.isRunning()) {
-                try {
-                    //noinspection BusyWait
-                    Thread.sleep(TimeUnit.SECONDS.toMillis(90));
-                } catch (InterruptedException e) {
-                    return;
-                }
-                synchronized (lck) {
-                    while (processedSN.size() > 700) {
-                        processedSN.remove(0);
-                    }
-                }
-            }
-        }, "SN Cleaner").start();
+        int size = client.getConfig().getInt("ignore-sn-window", 1024);
+        // must be smaller than the SN cycle, or a new message will be regarded as the old one with the same SN
+        window = new int[Math.max(1, Math.min(size, FrameBuffer.MAX_SN - 1))];
     }
 
     @Override
     protected void event(Frame frame) {
         synchronized (lck) {
-            if (processedSN.contains(frame.getSN())) {
-                client.getCore().getLogger().warn("Duplicated message from remote. Ignored.");
-                return;
+            int sn = frame.getSN();
+            if (FrameBuffer.isValidSN(sn)) {
+                if (isProcessed(sn)) {
+                    client.getCore().getLogger().warn("Duplicated message from remote. Ignored.");
+                    discard(frame);
+                    return;
+                }
+                markProcessed(sn);
             }
-            client.getSession().getSN().updateAndGet(prev -> prev == 65535 ? frame.getSN() : Math.max(frame.getSN(), prev));
+            client.getSession().getSN().updateAndGet(prev -> prev == 65535 ? sn : Math.max(sn, prev));
             event0(frame);
-            processedSN.add(frame.getSN());
             saveSN();
         }
     }
+
+    private boolean isProcessed(int sn) {
+        return (processedBits[sn >>> 6] & (1L << sn)) != 0;
+    }
+
+    private void markProcessed(int sn) {
+        int evicted = window[windowPos];
+        if (evicted != 0) {
+            processedBits[evicted >>> 6] &= ~(1L << evicted);
+        }
+        window[windowPos] = sn;
+        processedBits[sn >>> 6] |= 1L << sn;
+        if (++windowPos == window.length) {
+            windowPos = 0;
+        }
+    }
 }
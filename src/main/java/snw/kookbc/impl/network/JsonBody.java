@@ -0,0 +1,216 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// The JSON body of a POST request, serialized from the Map built by MapBuilder.
+// The map is written straight into an Okio buffer (UTF-8 bytes) once, the EmbeddedJson values are escaped on the fly.
+// The buffer is kept, so the Content-Length is known and OkHttp can send the body again on retry.
+public final class JsonBody extends RequestBody {
+    private static final MediaType MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
+    // Gson is thread-safe, all the JSON written by KookBC goes through this one.
+    public static final Gson GSON = new GsonBuilder()
+            // only reached if an EmbeddedJson is nested, the top-level ones are streamed by JsonBody
+            .registerTypeAdapter(EmbeddedJson.class, (JsonSerializer<EmbeddedJson>) (src, type, context) -> new JsonPrimitive(src.toString()))
+            .registerTypeHierarchyAdapter(EscapedString.class, (JsonSerializer<EscapedString>) (src, type, context) -> new JsonPrimitive(src.toString()))
+            .create();
+
+    private final Map<?, ?> body;
+    private Buffer buffer;
+
+    public JsonBody(Map<?, ?> body) {
+        this.body = body;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return serialize().size();
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        Buffer serialized = serialize();
+        serialized.copyTo(sink.getBuffer(), 0, serialized.size());
+        sink.emit();
+    }
+
+    private synchronized Buffer serialize() {
+        if (buffer == null) {
+            Buffer result = new Buffer();
+            // the BufferedWriter matters: OutputStreamWriter copies every String written into it to a new char[]
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(result.outputStream(), StandardCharsets.UTF_8))) {
+                write(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // should never happen, it is a memory buffer
+            }
+            buffer = result;
+        }
+        return buffer;
+    }
+
+    private void write(Writer out) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : body.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                continue; // Gson drops the null values in a map too
+            }
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            GSON.toJson(String.valueOf(entry.getKey()), out);
+            out.write(':');
+            if (value instanceof EmbeddedJson) {
+                out.write('"');
+                ((EmbeddedJson) value).writeTo(new StringEscapingWriter(out));
+                out.write('"');
+            } else if (value instanceof EscapedString) {
+                out.write('"');
+                ((EscapedString) value).writeEscaped(out);
+                out.write('"');
+            } else {
+                GSON.toJson(value, out);
+            }
+        }
+        out.write('}');
+    }
+
+    // for logging
+    @Override
+    public String toString() {
+        return serialize().snapshot().utf8();
+    }
+
+    // Returns a Writer which escapes the text written into it as the content of a JSON string.
+    // Closing it does not close the given Writer.
+    public static Writer escaping(Writer out) {
+        return new StringEscapingWriter(out);
+    }
+
+    // A string value which writes itself into the body already escaped, e.g. a filled card template.
+    // toString() must return the unescaped string.
+    public interface EscapedString {
+        // write the escaped content, without the quotes
+        void writeEscaped(Writer out) throws IOException;
+    }
+
+    // escapes the text written into it as the content of a JSON string
+    private static final class StringEscapingWriter extends Writer {
+        private final Writer out;
+
+        StringEscapingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            String escaped = escape((char) c);
+            if (escaped != null) {
+                out.write(escaped);
+            } else {
+                out.write(c);
+            }
+        }
+
+        @Override
+        public void write(@NotNull char[] cbuf, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                String escaped = escape(cbuf[i]);
+                if (escaped != null) {
+                    out.write(cbuf, start, i - start); // the safe part before it
+                    out.write(escaped);
+                    start = i + 1;
+                }
+            }
+            out.write(cbuf, start, off + len - start);
+        }
+
+        @Override
+        public void write(@NotNull String str, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                String escaped = escape(str.charAt(i));
+                if (escaped != null) {
+                    out.write(str, start, i - start);
+                    out.write(escaped);
+                    start = i + 1;
+                }
+            }
+            out.write(str, start, off + len - start);
+        }
+
+        @Nullable
+        private static String escape(char c) {
+            switch (c) {
+                case '"':
+                    return "\\\"";
+                case '\\':
+                    return "\\\\";
+                case '\n':
+                    return "\\n";
+                case '\r':
+                    return "\\r";
+                case '\t':
+                    return "\\t";
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        return String.format("\\u%04x", (int) c);
+                    }
+                    return null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            // the outer writer is still in use
+        }
+    }
+}
@@ -33,12 +33,17 @@ import snw.kookbc.SharedConstants;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.command.CommandManagerImpl;
 import snw.kookbc.impl.event.EventFactory;
+import snw.kookbc.impl.message.MessageImpl;
 import snw.kookbc.impl.network.exceptions.BadResponseException;
+import snw.kookbc.impl.network.webhook.SNCheckpoint;
 import snw.kookbc.impl.network.webhook.WebHookClient;
+import snw.kookbc.util.PartitionedExecutor;
 
-import java.io.*;
-import java.util.Iterator;
-import java.util.Set;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ListenerImpl implements Listener {
@@ -58,7 +63,20 @@ public class ListenerImpl implements Listener {
         }
         switch (frame.getType()) {
             case EVENT:
-                client.getEventExecutor().execute(() -> event(frame));
+                EventJournal journal = client.getEventJournal();
+                if (journal != null) {
+                    try {
+                        journal.append(frame); // before it is acknowledged and dispatched
+                    } catch (IOException e) {
+                        client.getCore().getLogger().warn("Unable to append the event to the journal.", e);
+                    }
+                }
+                try {
+                    client.getEventExecutor().execute(() -> event(frame));
+                } catch (RejectedExecutionException e) {
+                    discard(frame); // the remote will send it again
+                    throw e;
+                }
                 break;
             case HELLO:
                 hello(frame);
@@ -75,11 +93,11 @@ public class ListenerImpl implements Listener {
                 break;
             case RECONNECT:
                 client.getCore().getLogger().warn("Got RECONNECT request from remote. Attempting to reconnect.");
-                client.getConnector().requestReconnect();
+                client.getConnector().reconnectRequested(); // the remote wants a new session, so RESUME is useless
                 break;
             case RESUME_ACK:
                 client.getCore().getLogger().info("Resume finished");
-                client.getSession().setId(frame.getData().get("session_id").getAsString());
+                client.getConnector().resumeAck(frame.getData().get("session_id").getAsString());
                 break;
         }
     }
@@ -89,48 +107,122 @@ public class ListenerImpl implements Listener {
             client.getCore().getLogger().debug("Got EVENT");
             Session session = client.getSession();
             AtomicInteger sn = session.getSN();
-            Set<Frame> buffer = session.getBuffer();
-            int expected = sn.get() == 65535 ? 1 : sn.get() + 1;
+            FrameBuffer buffer = session.getBuffer();
+            int expected = FrameBuffer.nextSN(sn.get());
             int actual = frame.getSN();
-            if (actual > expected) {
-                client.getCore().getLogger().warn("Unexpected wrong SN, expected {}, got {}", expected, actual);
-                client.getCore().getLogger().warn("We will process it later.");
-                buffer.add(frame);
-            } else if (expected == actual) {
+            int distance = FrameBuffer.isValidSN(actual) ? FrameBuffer.distance(expected, actual) : -1;
+            if (distance == 0) {
                 event0(frame);
-                sn.getAndAdd(1);
+                sn.set(actual);
                 saveSN();
-                if (!buffer.isEmpty()) {
-                    int continueId = sn.get() + 1;
-                    do {
-                        boolean found = false;
-                        Iterator<Frame> bufferIterator = buffer.iterator();
-                        while (bufferIterator.hasNext()) {
-                            Frame bufFrame = bufferIterator.next();
-                            if (bufFrame.getSN() == continueId) {
-                                found = true;       // we found the frame matching the continueId,
-                                // so we will continue after the frame got processed
-                                event0(bufFrame);
-                                sn.set(continueId); // make sure the SN will update!
-                                saveSN();
-                                continueId++;
-                                bufferIterator.remove(); // we won't need this frame, because it has processed
-                                client.getCore().getLogger().debug("Processed message in buffer with SN {}", bufFrame.getSN());
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            break;
-                        }
-                    } while (true);
+                drainBuffer();
+            } else if (distance > 0 && distance <= FrameBuffer.WINDOW) {
+                client.getCore().getLogger().warn("Unexpected wrong SN, expected {}, got {}", expected, actual);
+                client.getCore().getLogger().warn("We will process it later.");
+                if (!buffer.add(frame)) {
+                    client.getCore().getLogger().debug("Duplicated message with SN {} in buffer. Ignored.", actual);
+                    discard(frame);
+                } else if (buffer.size() == 1) {
+                    scheduleGapCheck();
                 }
+                skipGapIfTimeout();
             } else {
                 client.getCore().getLogger().warn("Unexpected old message from remote. Dropped it.");
+                discard(frame);
             }
         }
     }
 
+    // process the buffered frames that are continuous with the current SN, O(1) per frame.
+    // should be called with lck held.
+    protected void drainBuffer() {
+        Session session = client.getSession();
+        AtomicInteger sn = session.getSN();
+        FrameBuffer buffer = session.getBuffer();
+        if (buffer.isEmpty()) {
+            return;
+        }
+        Frame bufFrame;
+        while ((bufFrame = buffer.poll(FrameBuffer.nextSN(sn.get()))) != null) {
+            event0(bufFrame);
+            sn.set(bufFrame.getSN()); // make sure the SN will update!
+            saveSN();
+            client.getCore().getLogger().debug("Processed message in buffer with SN {}", bufFrame.getSN());
+        }
+        if (!buffer.isEmpty()) {
+            buffer.resetGapTimer(); // we are waiting for another missing SN now
+            scheduleGapCheck();
+        }
+    }
+
+    // if the missing SN has not arrived in time, regard it as lost and continue with the buffered frames.
+    // should be called with lck held.
+    protected void skipGapIfTimeout() {
+        FrameBuffer buffer = client.getSession().getBuffer();
+        if (buffer.isEmpty() || buffer.getGapMillis() < getGapTimeout()) {
+            return;
+        }
+        AtomicInteger sn = client.getSession().getSN();
+        int next = buffer.nextBufferedSN(sn.get());
+        if (next == -1) {
+            return;
+        }
+        client.getCore().getLogger().warn(
+                "Missing message(s) from SN {} to {} did not arrive in {} ms, skipped.",
+                FrameBuffer.nextSN(sn.get()), FrameBuffer.previousSN(next), getGapTimeout()
+        );
+        sn.set(FrameBuffer.previousSN(next));
+        saveSN();
+        drainBuffer();
+    }
+
+    protected void scheduleGapCheck() {
+        if (!client.isRunning()) {
+            return;
+        }
+        client.getCore().getScheduler().runTaskLater(
+                client.getInternalPlugin(),
+                () -> {
+                    if (client.isRunning()) {
+                        try {
+                            client.getEventExecutor().execute(() -> {
+                                synchronized (lck) {
+                                    skipGapIfTimeout();
+                                }
+                            });
+                        } catch (RejectedExecutionException ignored) {
+                            // the executor is full of events, and they will check the gap when they are processed
+                        }
+                    }
+                },
+                getGapTimeout()
+        );
+    }
+
+    protected long getGapTimeout() {
+        return client.getConfig().getLong("sn-gap-timeout", 10000L);
+    }
+
+    // dispatch the frame to the event lane it belongs to, or process it here if the lanes are disabled.
     protected void event0(Frame frame) {
+        PartitionedExecutor lanes = client.getEventLanes();
+        if (lanes == null) {
+            handleEvent(frame);
+        } else {
+            lanes.execute(EventFactory.getPartitionKey(frame.getData()), () -> handleEvent(frame));
+        }
+    }
+
+    protected void handleEvent(Frame frame) {
+        try {
+            handleEvent0(frame);
+        } finally {
+            client.getEventLatency().record(System.nanoTime() - frame.getReceivedAt(), TimeUnit.NANOSECONDS);
+            discard(frame); // handled, whether it succeeded or not
+        }
+    }
+
+    private void handleEvent0(Frame frame) {
         Event event;
         try {
             event = EventFactory.getEvent(client, frame);
@@ -148,33 +240,41 @@ public class ListenerImpl implements Listener {
         }
     }
 
+    // the frame won't be handled any more, so the journal doesn't need to keep it.
+    protected void discard(Frame frame) {
+        EventJournal journal = client.getEventJournal();
+        if (journal != null) {
+            journal.complete(frame);
+        }
+    }
+
+    // handle the events recovered from the journal in the order they were received.
+    // the SN is not checked, it belongs to the session of the last run.
+    public void replay(Iterable<Frame> frames) {
+        for (Frame frame : frames) {
+            try {
+                client.getEventExecutor().execute(() -> event0(frame));
+            } catch (RejectedExecutionException e) {
+                event0(frame); // the executor is bounded and full, run it here instead
+            }
+        }
+    }
+
+    // only the Webhook mode needs it, the WebSocket gateway tells us the SN when resuming.
     protected void saveSN() {
         if (client instanceof WebHookClient) {
-            File snfile = new File(client.getPluginsFolder(), "sn");
-            try {
-                if (!snfile.exists()) {
-                    // noinspection ResultOfMethodCallIgnored
-                    snfile.createNewFile();
-                }
-                FileWriter writer = new FileWriter(snfile, false);
-                writer.write(String.valueOf(client.getSession().getSN().get()));
-                writer.close();
-            } catch (IOException e) {
-                client.getCore().getLogger().warn("Unable to write SN to local.", e);
+            SNCheckpoint checkpoint = ((WebHookClient) client).getCheckpoint();
+            if (checkpoint != null) {
+                checkpoint.update(client.getSession().getSN().get());
             }
         }
     }
 
     protected void hello(Frame frame) {
         client.getCore().getLogger().debug("Got HELLO");
-        client.getConnector().setConnected(true);
         JsonObject object = frame.getData();
         int status = object.get("code").getAsInt();
-        if (status == 0) {
-            client.getSession().setId(object.get("session_id").getAsString());
-        } else {
-            client.getConnector().requestReconnect();
-        }
+        client.getConnector().hello(status, status == 0 ? object.get("session_id").getAsString() : null);
     }
 
     // return true if the component is a command and executed (whether success or failed).
@@ -187,6 +287,7 @@ public class ListenerImpl implements Listener {
         TextComponent component = null;
         if (event instanceof ChannelMessageEvent) {
             msg = ((ChannelMessageEvent) event).getMessage();
+            if (isNotText(msg)) return false; // do not decode the other components (e.g. cards) here
             BaseComponent baseComponent = msg.getComponent();
             channel = ((ChannelMessageEvent) event).getChannel();
             sender = msg.getSender();
@@ -195,6 +296,7 @@ public class ListenerImpl implements Listener {
             }
         } else {
             msg = ((PrivateMessageReceivedEvent) event).getMessage();
+            if (isNotText(msg)) return false;
             BaseComponent baseComponent = msg.getComponent();
             sender = ((PrivateMessageReceivedEvent) event).getUser();
             if (baseComponent instanceof TextComponent) {
@@ -233,4 +335,9 @@ public class ListenerImpl implements Listener {
             return true; // Although this failed, but it is a valid command
         }
     }
+
+    // checks the type of the message without decoding its component
+    private static boolean isNotText(Message msg) {
+        return msg instanceof MessageImpl && !((MessageImpl) msg).isTextComponent();
+    }
 }
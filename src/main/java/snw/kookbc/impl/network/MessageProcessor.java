@@ -18,8 +18,7 @@
 
 package snw.kookbc.impl.network;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
@@ -27,22 +26,35 @@ import okio.ByteString;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.capture.FrameCapture;
 
 import java.io.IOException;
 import java.net.ProtocolException;
-import java.util.zip.DataFormatException;
-
-import static snw.kookbc.util.Util.decompressDeflate;
 
 public class MessageProcessor extends WebSocketListener {
     private final KBCClient client;
     private final Connector connector;
     private final Listener listener;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final FrameDecodeStage decodeStage; // null if the payloads are decoded on the network thread
 
     public MessageProcessor(KBCClient client) {
         this.client = client;
         this.connector = client.getConnector();
         listener = ListenerFactory.getListener(client);
+        int queueCapacity = client.getConfig().getInt("websocket-decode-queue", 1024);
+        if (queueCapacity > 0) {
+            decodeStage = new FrameDecodeStage(
+                    client,
+                    queueCapacity,
+                    FrameDecodeStage.OverflowPolicy.of(client.getConfig().getString("websocket-decode-queue-overflow", "block")),
+                    connector.getDecodeStats(),
+                    this::process,
+                    decoder::close
+            );
+        } else {
+            decodeStage = null;
+        }
     }
 
     @Override
@@ -55,27 +67,54 @@ public class MessageProcessor extends WebSocketListener {
     @Override
     public void onMessage(@NotNull WebSocket webSocket, @NotNull String text) {
         super.onMessage(webSocket, text);
-        JsonObject object = JsonParser.parseString(text).getAsJsonObject();
-        Frame frame = new Frame(object.get("s").getAsInt(), object.get("sn") != null ? object.get("sn").getAsInt() : -1, object.getAsJsonObject("d"));
-        listener.executeEvent(frame);
+        FrameCapture capture = client.getFrameCapture();
+        if (capture != null) {
+            capture.recordText(text);
+        }
+        if (decodeStage != null) {
+            decodeStage.offer(text);
+        } else {
+            process(text);
+        }
     }
 
     // for compressed messages, so we will extract it before processing
     @Override
     public void onMessage(@NotNull WebSocket webSocket, @NotNull ByteString bytes) {
         super.onMessage(webSocket, bytes);
-        String res;
+        FrameCapture capture = client.getFrameCapture();
+        if (capture != null) {
+            capture.recordDeflate(bytes.toByteArray());
+        }
+        if (decodeStage != null) {
+            decodeStage.offer(bytes);
+        } else {
+            process(bytes);
+        }
+    }
+
+    // the payload is String or ByteString
+    protected void process(Object payload) {
+        Frame frame;
         try {
-            res = new String(decompressDeflate(bytes.toByteArray()));
-        } catch (DataFormatException | IOException e) {
-            client.getCore().getLogger().error("Unable to decompress data", e);
+            if (payload instanceof ByteString) {
+                frame = decoder.decode((ByteString) payload);
+            } else {
+                frame = decoder.decode((String) payload);
+            }
+        } catch (IOException | JsonParseException e) {
+            client.getCore().getLogger().error("Unable to decode data", e);
             return;
         }
-        JsonObject object = JsonParser.parseString(res).getAsJsonObject();
-        Frame frame = new Frame(object.get("s").getAsInt(), object.get("sn") != null ? object.get("sn").getAsInt() : -1, object.getAsJsonObject("d"));
         listener.executeEvent(frame);
     }
 
+    @Override
+    public void onClosed(@NotNull WebSocket webSocket, int code, @NotNull String reason) {
+        super.onClosed(webSocket, code, reason);
+        stop();
+    }
+
     @Override
     public void onFailure(@NotNull WebSocket webSocket, @NotNull Throwable t, @Nullable Response response) {
         super.onFailure(webSocket, t, response);
@@ -85,7 +124,16 @@ public class MessageProcessor extends WebSocketListener {
             connector.getParent().getCore().getLogger().error("Stacktrace is following.", t);
         }
         webSocket.close(1000, "User Closed Service");
-        connector.requestReconnect();
+        stop();
+        connector.failure(webSocket);
+    }
+
+    private void stop() {
+        if (decodeStage != null) {
+            decodeStage.close(); // the decoder will be closed after the queued frames got processed
+        } else {
+            decoder.close();
+        }
     }
 
 }
@@ -19,94 +19,488 @@
 package snw.kookbc.impl.network;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import okhttp3.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.capture.FrameCapture;
 import snw.kookbc.impl.network.exceptions.BadResponseException;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 // provide the basic HTTP/WebSocket call feature. Authenticated with Bot Token.
 public class NetworkClient {
     private final KBCClient kbcClient;
     private final String tokenWithPrefix;
-    private final OkHttpClient client = new OkHttpClient();
+    // The clients in the same JVM with the same transport options share it, see HttpTransport.
+    private final OkHttpClient client;
+    // delays the async calls waiting for the rate limit, shared like the OkHttpClient
+    private static final ScheduledExecutorService DELAY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "HTTP Rate Limit Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int MAX_ATTEMPTS = 3; // the request is sent again after HTTP 429, at most this count of times
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private static final TypeAdapter<JsonObject> JSON_OBJECT = JsonBody.GSON.getAdapter(JsonObject.class);
+    private final Map<GetKey, CompletableFuture<Object>> inFlightGets = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedGets = new AtomicLong();
+    private final long maxWaitNanos;
+    private volatile long globalResetAt = System.nanoTime(); // no request is sent before it
+
+    private final String baseUrl; // null if the default one is used
+    private volatile Gson gson = JsonBody.GSON;
 
     public NetworkClient(KBCClient kbcClient, String token) {
         this.kbcClient = kbcClient;
         tokenWithPrefix = "Bot " + token;
+        client = HttpTransport.get(kbcClient.getConfig());
+        String configured = kbcClient.getConfig().getString("api-base-url", "");
+        if (configured == null || configured.isEmpty() || configured.equals(HttpAPIRoute.BASE_URL.getRoute())) {
+            baseUrl = null;
+        } else {
+            baseUrl = configured.endsWith("/") ? configured.substring(0, configured.length() - 1) : configured;
+        }
+        maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(kbcClient.getConfig().getLong("rate-limit-max-wait", 30000L));
     }
 
     public JsonObject get(String fullUrl) {
-        return JsonParser.parseString(getRawContent(fullUrl)).getAsJsonObject().getAsJsonObject("data");
+        return get(fullUrl, JSON_OBJECT);
+    }
+
+    // the data object of the response is decoded into the provided type, see registerTypeAdapter.
+    // the result may be shared with the identical calls made at the same time, don't modify it.
+    public <T> T get(String fullUrl, Type dataType) {
+        return get(fullUrl, getAdapter(dataType));
     }
 
     public JsonObject post(String fullUrl, Map<?, ?> body) {
-        return JsonParser.parseString(postContent(fullUrl, body)).getAsJsonObject().getAsJsonObject("data");
+        return post(fullUrl, body, JsonObject.class);
+    }
+
+    public <T> T post(String fullUrl, Map<?, ?> body, Type dataType) {
+        JsonBody json = new JsonBody(body);
+        logRequest("POST", fullUrl, json);
+        return execute(newPost(fullUrl, json), getAdapter(dataType));
     }
 
     public String getRawContent(String fullUrl) {
-        logRequest("GET", fullUrl, null);
-        Request request = new Request.Builder()
-                .get()
-                .url(fullUrl)
-                .addHeader("Authorization", tokenWithPrefix)
-                .build();
-        return call(request);
+        return coalesce(fullUrl, null, () -> {
+            logRequest("GET", fullUrl, null);
+            return call(newGet(fullUrl));
+        });
+    }
+
+    private <T> T get(String fullUrl, TypeAdapter<T> adapter) {
+        return coalesce(fullUrl, adapter, () -> {
+            logRequest("GET", fullUrl, null);
+            return execute(newGet(fullUrl), adapter);
+        });
     }
 
     public String postContent(String fullUrl, Map<?, ?> body) {
-        return postContent(fullUrl, new Gson().toJson(body), "application/json");
+        JsonBody json = new JsonBody(body);
+        logRequest("POST", fullUrl, json);
+        return call(newPost(fullUrl, json));
     }
 
     public String postContent(String fullUrl, String body, String mediaType) {
         logRequest("POST", fullUrl, body);
-        Request request = new Request.Builder()
-                .post(
-                        RequestBody.create(body, MediaType.parse(mediaType))
-                )
-                .url(fullUrl)
-                .addHeader("Authorization", tokenWithPrefix)
-                .build();
-        return call(request);
+        return call(newPost(fullUrl, RequestBody.create(body, MediaType.parse(mediaType))));
     }
 
+    // returns the whole response body.
     public String call(Request request) {
+        return execute0(request, null).raw;
+    }
+
+    // returns the data object of the response, decoded into the provided type.
+    public <T> T call(Request request, Type dataType) {
+        return execute(request, getAdapter(dataType));
+    }
+
+    // the body is decoded in one pass, only the data object is kept.
+    protected <T> T execute(Request request, TypeAdapter<T> dataAdapter) {
+        return execute0(request, dataAdapter).data;
+    }
+
+    private <T> Envelope<T> execute0(Request request, @Nullable TypeAdapter<T> dataAdapter) {
         Bucket bucket = getBucket(request);
-        bucket.check();
-        try (Response res = client.newCall(request).execute()) {
+        Request resolved = resolve(request);
+        for (int attempt = 1; ; attempt++) {
+            bucket.await(reserve(bucket));
+            try (Response res = client.newCall(resolved).execute()) {
+                Envelope<T> result = handleResponse(bucket, request, res, attempt, dataAdapter);
+                if (result != null) {
+                    return result;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Unexpected IOException when we attempting to call request.", e);
+            }
+        }
+    }
 
-            // region Bucket post process
-            if (bucket.availableTimes.get() == -1) {
-                bucket.availableTimes.set(Integer.parseInt(res.header("X-Rate-Limit-Remaining")));
-            } else {
-                int limit = Integer.parseInt(res.header("X-Rate-Limit-Limit"));
-                int reset = Integer.parseInt(res.header("X-Rate-Limit-Reset"));
-                if (reset == 0) {
-                    bucket.availableTimes.set(limit);
-                } else {
-                    bucket.scheduleUpdateAvailableTimes(limit, reset);
+    // region Async calls
+    // The futures are completed on the threads of the OkHttp dispatcher, so don't block in the dependent actions.
+    // The requests waiting for the rate limit are delayed, no thread is blocked.
+
+    public CompletableFuture<JsonObject> getAsync(String fullUrl) {
+        return coalesceAsync(fullUrl, JSON_OBJECT, () -> {
+            logRequest("GET", fullUrl, null);
+            return executeAsync(newGet(fullUrl), JSON_OBJECT);
+        });
+    }
+
+    public CompletableFuture<JsonObject> postAsync(String fullUrl, Map<?, ?> body) {
+        JsonBody json = new JsonBody(body);
+        logRequest("POST", fullUrl, json);
+        return executeAsync(newPost(fullUrl, json), JSON_OBJECT);
+    }
+
+    public CompletableFuture<String> getRawContentAsync(String fullUrl) {
+        return coalesceAsync(fullUrl, null, () -> {
+            logRequest("GET", fullUrl, null);
+            return callAsync(newGet(fullUrl));
+        });
+    }
+
+    public CompletableFuture<String> postContentAsync(String fullUrl, Map<?, ?> body) {
+        JsonBody json = new JsonBody(body);
+        logRequest("POST", fullUrl, json);
+        return callAsync(newPost(fullUrl, json));
+    }
+
+    public CompletableFuture<String> postContentAsync(String fullUrl, String body, String mediaType) {
+        logRequest("POST", fullUrl, body);
+        return callAsync(newPost(fullUrl, RequestBody.create(body, MediaType.parse(mediaType))));
+    }
+
+    public CompletableFuture<String> callAsync(Request request) {
+        return executeAsync0(request, null).thenApply(envelope -> envelope.raw);
+    }
+
+    protected <T> CompletableFuture<T> executeAsync(Request request, TypeAdapter<T> dataAdapter) {
+        return executeAsync0(request, dataAdapter).thenApply(envelope -> envelope.data);
+    }
+
+    private <T> CompletableFuture<Envelope<T>> executeAsync0(Request request, @Nullable TypeAdapter<T> dataAdapter) {
+        CompletableFuture<Envelope<T>> future = new CompletableFuture<>();
+        try {
+            callAsync0(getBucket(request), request, resolve(request), 1, dataAdapter, future);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> void callAsync0(Bucket bucket, Request request, Request resolved, int attempt,
+                                @Nullable TypeAdapter<T> dataAdapter, CompletableFuture<Envelope<T>> future) {
+        long wait = reserve(bucket) - System.nanoTime();
+        Runnable send = () -> client.newCall(resolved).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (Response res = response) {
+                    Envelope<T> result = handleResponse(bucket, request, res, attempt, dataAdapter);
+                    if (result != null) {
+                        future.complete(result);
+                    } else {
+                        callAsync0(bucket, request, resolved, attempt + 1, dataAdapter, future);
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
                 }
             }
-            // endregion
-
-            if (res.body() != null) {
-                String resStr = res.body().string();
-                JsonObject object = JsonParser.parseString(resStr).getAsJsonObject();
-                int status = object.get("code").getAsInt();
-                if (status != 0) {
-                    throw new BadResponseException(status, object.get("message").getAsString());
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                future.completeExceptionally(new RuntimeException("Unexpected IOException when we attempting to call request.", e));
+            }
+        });
+        if (wait > 0) {
+            bucket.recordWait(wait);
+            DELAY_SCHEDULER.schedule(send, wait, TimeUnit.NANOSECONDS);
+        } else {
+            send.run();
+        }
+    }
+
+    // endregion
+
+    // region Coalescing
+    // The identical GET requests made while one is in flight share its result.
+    // When many events mention the same uncached entity at once, only one request is sent for it.
+    // The JSON results are copied for the callers who joined, the typed results are shared as is.
+
+    private <T> T coalesce(String fullUrl, @Nullable TypeAdapter<?> adapter, Supplier<T> call) {
+        GetKey key = new GetKey(fullUrl, adapter);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightGets.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedGets.incrementAndGet();
+            return copyShared(join(existing));
+        }
+        try {
+            T result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightGets.remove(key, mine);
+        }
+    }
+
+    private <T> CompletableFuture<T> coalesceAsync(String fullUrl, @Nullable TypeAdapter<?> adapter, Supplier<CompletableFuture<T>> call) {
+        GetKey key = new GetKey(fullUrl, adapter);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightGets.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedGets.incrementAndGet();
+            return existing.thenApply(NetworkClient::copyShared); // also keeps the caller from completing the shared one
+        }
+        CompletableFuture<T> result = call.get();
+        result.whenComplete((value, e) -> {
+            inFlightGets.remove(key, mine);
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(value);
+            }
+        });
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copyShared(Object result) {
+        return (T) (result instanceof JsonElement ? ((JsonElement) result).deepCopy() : result);
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause; // so the callers can catch BadResponseException as usual
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    // endregion
+
+    // the time at which a request to the provided bucket can be sent, the global limit is considered.
+    // throws TooFastException if it is later than rate-limit-max-wait from now, no token is taken in that case.
+    private long reserve(Bucket bucket) {
+        return bucket.reserve(globalResetAt, maxWaitNanos);
+    }
+
+    // the same for the blocking and the async calls: update the bucket, then check the response code.
+    // returns null if the request should be sent again because of the rate limit.
+    // the raw body is kept only if no data adapter is provided, or the capture needs it.
+    private <T> Envelope<T> handleResponse(Bucket bucket, Request request, Response res, int attempt,
+                                           @Nullable TypeAdapter<T> dataAdapter) throws IOException {
+        // region Bucket post process
+        long reset = parseReset(res.header("X-Rate-Limit-Reset"));
+        int limit = parseInt(res.header("X-Rate-Limit-Limit"));
+        int remaining = parseInt(res.header("X-Rate-Limit-Remaining"));
+        if (limit >= 0 && remaining >= 0 && reset >= 0) {
+            bucket.update(limit, remaining, reset);
+        }
+        // endregion
+
+        Envelope<T> envelope;
+        ResponseBody body = res.body();
+        FrameCapture capture = kbcClient.getFrameCapture();
+        if (res.code() == 429) {
+            envelope = new Envelope<>();
+            envelope.code = 429;
+            envelope.message = res.message();
+        } else if (body == null) {
+            envelope = new Envelope<>();
+            envelope.raw = "";
+        } else if (dataAdapter == null || capture != null) {
+            String raw = body.string();
+            envelope = raw.isEmpty() ? new Envelope<>() : readEnvelope(new StringReader(raw), dataAdapter);
+            envelope.raw = raw;
+        } else {
+            envelope = readEnvelope(body.charStream(), dataAdapter);
+        }
+
+        if (envelope.code == 429) {
+            long after = reset >= 0 ? reset : parseReset(res.header("Retry-After"));
+            if (after < 0) {
+                after = TimeUnit.SECONDS.toNanos(1);
+            }
+            if (res.header("X-Rate-Limit-Global") != null) {
+                globalResetAt = System.nanoTime() + after;
+                kbcClient.getCore().getLogger().warn("Global rate limit reached, all the requests are delayed for {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(after));
+            }
+            bucket.limited(after);
+            if (attempt < MAX_ATTEMPTS) {
+                return null;
+            }
+        }
+        if (envelope.code != 0) {
+            throw new BadResponseException(envelope.code, envelope.message);
+        }
+        if (capture != null && envelope.raw != null && !envelope.raw.isEmpty()) {
+            capture.recordHttp(request.method(), request.url().toString(), envelope.raw);
+        }
+        return envelope;
+    }
+
+    // streams the response once: checks "code" and "message", decodes "data" if an adapter is provided.
+    private static <T> Envelope<T> readEnvelope(Reader in, @Nullable TypeAdapter<T> dataAdapter) throws IOException {
+        Envelope<T> result = new Envelope<>();
+        result.code = -1; // no code, treat it as a failure
+        RuntimeException dataFailure = null; // the data of a failed call may not be what we expected
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true); // as JsonParser does
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "code":
+                        result.code = reader.nextInt();
+                        break;
+                    case "message":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                        } else {
+                            result.message = reader.nextString();
+                        }
+                        break;
+                    case "data":
+                        if (dataAdapter == null) {
+                            reader.skipValue();
+                        } else {
+                            try {
+                                result.data = dataAdapter.read(reader);
+                            } catch (RuntimeException e) {
+                                dataFailure = e; // go on, the code may tell more
+                            }
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
                 }
-                return resStr;
             }
-            return "";
+            reader.endObject();
+        } catch (IOException | RuntimeException e) {
+            if (dataFailure == null) {
+                throw e;
+            } // else the reader may be broken by the failure, the code is what we have got so far
+        }
+        if (dataFailure != null && result.code == 0) {
+            throw dataFailure;
+        }
+        return result;
+    }
+
+    // for the subclasses answering the calls without the network, e.g. the replay mode
+    protected static <T> T decodeData(String raw, TypeAdapter<T> dataAdapter) {
+        try {
+            Envelope<T> envelope = readEnvelope(new StringReader(raw), dataAdapter);
+            if (envelope.code != 0) {
+                throw new BadResponseException(envelope.code, envelope.message);
+            }
+            return envelope.data;
         } catch (IOException e) {
-            throw new RuntimeException("Unexpected IOException when we attempting to call request.", e);
+            throw new JsonParseException(e);
+        }
+    }
+
+    // the value is in seconds and may have a fraction, returns nanoseconds, or -1 if absent or invalid
+    private static long parseReset(@Nullable String value) {
+        if (value == null) {
+            return -1L;
+        }
+        try {
+            double seconds = Double.parseDouble(value.trim());
+            return seconds >= 0 ? (long) Math.ceil(seconds * 1_000_000_000L) : -1L;
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static int parseInt(@Nullable String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Request newGet(String fullUrl) {
+        return new Request.Builder()
+                .get()
+                .url(fullUrl)
+                .addHeader("Authorization", tokenWithPrefix)
+                .build();
+    }
+
+    private Request newPost(String fullUrl, RequestBody body) {
+        return new Request.Builder()
+                .post(body)
+                .url(fullUrl)
+                .addHeader("Authorization", tokenWithPrefix)
+                .build();
+    }
+
+    // register a TypeAdapter (or a JsonSerializer/JsonDeserializer) used by get/post/call with a data type.
+    public synchronized void registerTypeAdapter(Type type, Object typeAdapter) {
+        gson = gson.newBuilder().registerTypeAdapter(type, typeAdapter).create();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> TypeAdapter<T> getAdapter(Type type) {
+        if (type == JsonObject.class) {
+            return (TypeAdapter<T>) JSON_OBJECT; // so the calls can be coalesced with get(String)
+        }
+        return (TypeAdapter<T>) gson.getAdapter(TypeToken.get(type));
+    }
+
+    // the URLs are built with the default base URL, so replace it if another one is configured.
+    protected Request resolve(Request request) {
+        if (baseUrl == null) {
+            return request;
         }
+        String url = request.url().toString();
+        String defaultBase = HttpAPIRoute.BASE_URL.getRoute();
+        if (!url.startsWith(defaultBase)) {
+            return request;
+        }
+        return request.newBuilder().url(baseUrl + url.substring(defaultBase.length())).build();
     }
 
     @NotNull
@@ -114,16 +508,64 @@ public class NetworkClient {
         return client.newWebSocket(request, listener);
     }
 
+    // for the HTTP consumers which don't call the KOOK API, e.g. the update checker
+    public OkHttpClient getHttpClient() {
+        return client;
+    }
+
     public String getTokenWithPrefix() {
         return tokenWithPrefix;
     }
 
+    // the count of the GET requests which were not sent because an identical one was in flight
+    public long getCoalescedGets() {
+        return coalescedGets.get();
+    }
+
+    // the buckets used so far, for the metrics
+    public Collection<Bucket> getBuckets() {
+        return Collections.unmodifiableCollection(buckets.values());
+    }
+
     protected Bucket getBucket(Request request) {
         String path = request.url().url().getPath().substring(4);
-        return Bucket.get(kbcClient, HttpAPIRoute.value(path));
+        return Bucket.get(kbcClient, buckets, HttpAPIRoute.value(path));
     }
 
-    protected void logRequest(String method, String fullUrl, @Nullable String postBodyJson) {
+    // the body is an Object, so its toString() is only called if the message is logged
+    protected void logRequest(String method, String fullUrl, @Nullable Object postBodyJson) {
         kbcClient.getCore().getLogger().debug("Sending HTTP API Request: Method {}, URL: {}, Body (POST only): {}", method, fullUrl, postBodyJson);
     }
-}
\ No newline at end of file
+
+    // {"code": ..., "message": ..., "data": ...}
+    private static final class Envelope<T> {
+        int code;
+        String message = "";
+        T data;
+        String raw; // null if not kept
+    }
+
+    private static final class GetKey {
+        private final String url;
+        private final TypeAdapter<?> adapter; // null for the raw calls
+
+        GetKey(String url, @Nullable TypeAdapter<?> adapter) {
+            this.url = url;
+            this.adapter = adapter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GetKey)) {
+                return false;
+            }
+            GetKey other = (GetKey) o;
+            return url.equals(other.url) && adapter == other.adapter;
+        }
+
+        @Override
+        public int hashCode() {
+            return url.hashCode() * 31 + System.identityHashCode(adapter);
+        }
+    }
+}
@@ -18,13 +18,11 @@
 
 package snw.kookbc.impl.network;
 
-import java.util.HashSet;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Session {
     private final AtomicInteger sn;
-    private final Set<Frame> buffer = new HashSet<>();
+    private final FrameBuffer buffer = new FrameBuffer();
     private String id;
 
     public Session(String id) {
@@ -48,7 +46,7 @@ public class Session {
         this.id = id;
     }
 
-    public Set<Frame> getBuffer() {
+    public FrameBuffer getBuffer() {
         return buffer;
     }
 }
@@ -0,0 +1,110 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.capture;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Reads the records from a file written by FrameCapture.
+public class CaptureReader implements Closeable {
+    private final DataInputStream in;
+    private final long startedAt;
+
+    public CaptureReader(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        if (in.readInt() != FrameCapture.MAGIC) {
+            in.close();
+            throw new IOException("Not a capture file: " + file);
+        }
+        int version = in.readInt();
+        if (version != FrameCapture.VERSION) {
+            in.close();
+            throw new IOException("Unsupported capture version: " + version);
+        }
+        startedAt = in.readLong();
+    }
+
+    // epoch millis
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    // returns null at the end of the file (including a truncated last record)
+    public Record next() throws IOException {
+        try {
+            byte kind = in.readByte();
+            long time = in.readLong();
+            String key = null;
+            if (kind == FrameCapture.KIND_HTTP) {
+                key = new String(readBytes(), StandardCharsets.UTF_8);
+            }
+            return new Record(kind, time, key, readBytes());
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private byte[] readBytes() throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupted capture file");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    public static class Record {
+        private final byte kind;
+        private final long time;
+        private final String key;
+        private final byte[] data;
+
+        Record(byte kind, long time, String key, byte[] data) {
+            this.kind = kind;
+            this.time = time;
+            this.key = key;
+            this.data = data;
+        }
+
+        // one of the FrameCapture.KIND_* constants
+        public byte getKind() {
+            return kind;
+        }
+
+        // nanoseconds since the capture started
+        public long getTime() {
+            return time;
+        }
+
+        // "METHOD URL" for the HTTP records, or null
+        public String getKey() {
+            return key;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
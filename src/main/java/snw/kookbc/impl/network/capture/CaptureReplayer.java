@@ -0,0 +1,232 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.capture;
+
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import snw.jkook.JKook;
+import snw.jkook.config.InvalidConfigurationException;
+import snw.jkook.config.file.YamlConfiguration;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.EventJournal;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.FrameBuffer;
+import snw.kookbc.impl.network.FrameDecoder;
+import snw.kookbc.impl.network.Listener;
+import snw.kookbc.impl.network.ListenerFactory;
+import snw.kookbc.impl.network.MessageType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Feeds the payloads in a capture into Listener#executeEvent, at the original speed, N times faster, or as fast as possible.
+// Reports the throughput and the latency from decoding a frame to the end of its handling.
+// Usage: java -cp KookBC.jar snw.kookbc.impl.network.capture.CaptureReplayer <capture file> [speed]
+//  the kbc.yml and the plugins folder in the working directory will be used if they exist.
+public class CaptureReplayer {
+    private static final long STALL_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private final KBCClient client;
+    private final Listener listener;
+
+    public CaptureReplayer(KBCClient client) {
+        this.client = client;
+        this.listener = ListenerFactory.getListener(client);
+    }
+
+    // key: "METHOD URL", value: the last recorded response body
+    public static Map<String, String> loadResponses(File capture) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        try (CaptureReader reader = new CaptureReader(capture)) {
+            CaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.getKind() == FrameCapture.KIND_HTTP) {
+                    result.put(record.getKey(), new String(record.getData(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return result;
+    }
+
+    // speed: 1 for the original speed, N for N times faster, 0 or negative for as fast as possible
+    public Report replay(File capture, double speed) throws IOException {
+        FrameDecoder decoder = new FrameDecoder();
+        client.getEventLatency().reset();
+        long events = 0;
+        long skipped = 0;
+        boolean resync = true; // the SN of the client must follow the capture
+        long start = System.nanoTime();
+        try (CaptureReader reader = new CaptureReader(capture)) {
+            CaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.getKind() == FrameCapture.KIND_HTTP) {
+                    continue;
+                }
+                if (speed > 0) {
+                    long due = start + (long) (record.getTime() / speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                Frame frame;
+                try {
+                    frame = record.getKind() == FrameCapture.KIND_DEFLATE
+                            ? decoder.decodeDeflate(record.getData(), 0, record.getData().length)
+                            : decoder.decode(new String(record.getData(), StandardCharsets.UTF_8));
+                } catch (IOException | JsonParseException e) {
+                    client.getCore().getLogger().warn("Unable to decode a payload in the capture, skipped.", e);
+                    skipped++;
+                    continue;
+                }
+                if (frame.getType() == MessageType.HELLO) {
+                    resync = true; // a new connection, the SN may start over
+                }
+                if (frame.getType() != MessageType.EVENT) {
+                    skipped++; // we have no connection to control
+                    continue;
+                }
+                if (resync) {
+                    resync(frame.getSN());
+                    resync = false;
+                }
+                listener.executeEvent(frame);
+                events++;
+            }
+        } finally {
+            decoder.close();
+        }
+        long fed = System.nanoTime();
+        awaitHandled(events);
+        return new Report(events, skipped, fed - start, System.nanoTime() - start, client.getEventLatency().toString(),
+                client.getEventLatency().getCount());
+    }
+
+    // done on the event executor, so the events fed before are not affected
+    private void resync(int sn) {
+        client.getEventExecutor().execute(() -> {
+            EventJournal journal = client.getEventJournal();
+            client.getSession().getBuffer().clear(frame -> {
+                if (journal != null) {
+                    journal.complete(frame);
+                }
+            });
+            client.getSession().getSN().set(FrameBuffer.isValidSN(sn) ? FrameBuffer.previousSN(sn) : 0);
+        });
+    }
+
+    // the dropped events (e.g. duplicated SN) never get handled, so give up if there is no progress for a while
+    private void awaitHandled(long events) {
+        long last = client.getEventLatency().getCount();
+        long lastProgress = System.nanoTime();
+        while (last < events && System.nanoTime() - lastProgress < STALL_TIMEOUT) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            long now = client.getEventLatency().getCount();
+            if (now != last) {
+                last = now;
+                lastProgress = System.nanoTime();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Logger logger = LoggerFactory.getLogger(CaptureReplayer.class);
+        if (args.length < 1) {
+            logger.error("Usage: CaptureReplayer <capture file> [speed, 0 means as fast as possible]");
+            System.exit(1);
+            return;
+        }
+        File capture = new File(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+
+        YamlConfiguration config = new YamlConfiguration();
+        File kbcLocal = new File("kbc.yml");
+        if (kbcLocal.isFile()) {
+            try {
+                config.load(kbcLocal);
+            } catch (IOException | InvalidConfigurationException e) {
+                logger.error("Cannot load kbc.yml", e);
+                System.exit(1);
+                return;
+            }
+        }
+        // nothing should leave this process
+        config.set("check-update", false);
+        config.set("capture-file", "");
+        config.set("event-journal", false);
+        config.set("botmarket-uuid", "");
+        File pluginsFolder = new File("plugins");
+
+        CoreImpl core = new CoreImpl(logger);
+        JKook.setCore(core);
+        KBCClient client = new ReplayClient(core, config, pluginsFolder.isDirectory() ? pluginsFolder : null, loadResponses(capture));
+        try {
+            client.start();
+            Report report = new CaptureReplayer(client).replay(capture, speed);
+            logger.info("Replay finished: {}", report);
+        } finally {
+            client.shutdown();
+        }
+        System.exit(0);
+    }
+
+    public static class Report {
+        private final long events;
+        private final long skipped;
+        private final long feedNanos;
+        private final long totalNanos;
+        private final String latency;
+        private final long handled;
+
+        Report(long events, long skipped, long feedNanos, long totalNanos, String latency, long handled) {
+            this.events = events;
+            this.skipped = skipped;
+            this.feedNanos = feedNanos;
+            this.totalNanos = totalNanos;
+            this.latency = latency;
+            this.handled = handled;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        // the events which were dropped by the client (e.g. duplicated SN), or not handled in time
+        public long getUnhandled() {
+            return Math.max(0, events - handled);
+        }
+
+        public double getEventsPerSecond() {
+            return totalNanos == 0 ? 0 : handled * 1e9 / totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("events=%d, unhandled=%d, other frames=%d, fed in %.1fms, finished in %.1fms, %.1f events/s, latency: %s",
+                    events, getUnhandled(), skipped, feedNanos / 1e6, totalNanos / 1e6, getEventsPerSecond(), latency);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.capture;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Records the payloads from remote and the responses of the HTTP API calls into a file,
+//  so they can be replayed offline by CaptureReplayer.
+// File format (big-endian):
+//  header: magic (int), version (int), the time the capture started (long, epoch millis)
+//  record: kind (byte), the time since the capture started (long, nanoseconds), then the data:
+//   TEXT, DEFLATE: length (int), bytes
+//   HTTP: length (int), "METHOD URL" in UTF-8, length (int), the response body in UTF-8
+public class FrameCapture implements Closeable {
+    static final int MAGIC = 0x4B424346; // "KBCF"
+    static final int VERSION = 1;
+    public static final byte KIND_TEXT = 1; // a non-compressed JSON payload
+    public static final byte KIND_DEFLATE = 2; // a compressed JSON payload
+    public static final byte KIND_HTTP = 3; // an HTTP API response
+
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+    private boolean closed = false;
+
+    public FrameCapture(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    public void recordText(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        record(KIND_TEXT, bytes, 0, bytes.length, null);
+    }
+
+    public void recordDeflate(byte[] bytes) {
+        record(KIND_DEFLATE, bytes, 0, bytes.length, null);
+    }
+
+    public void recordHttp(String method, String url, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        record(KIND_HTTP, bytes, 0, bytes.length, (method + " " + url).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private synchronized void record(byte kind, byte[] data, int offset, int length, byte[] key) {
+        if (closed) {
+            return;
+        }
+        try {
+            out.writeByte(kind);
+            out.writeLong(System.nanoTime() - startNanos);
+            if (key != null) {
+                out.writeInt(key.length);
+                out.write(key);
+            }
+            out.writeInt(length);
+            out.write(data, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+    }
+}
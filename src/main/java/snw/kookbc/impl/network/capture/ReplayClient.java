@@ -0,0 +1,51 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.capture;
+
+import snw.jkook.config.ConfigurationSection;
+import snw.kookbc.impl.CoreImpl;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.NetworkClient;
+
+import java.io.File;
+import java.util.Map;
+
+// A client without the network, the events are fed by CaptureReplayer,
+//  and the HTTP API calls are answered with the responses in the capture.
+public class ReplayClient extends KBCClient {
+
+    public ReplayClient(CoreImpl core, ConfigurationSection config, File pluginsFolder, Map<String, String> responses) {
+        super(core, config, pluginsFolder, "replay");
+        ((ReplayNetworkClient) getNetworkClient()).setResponses(responses);
+    }
+
+    @Override
+    protected NetworkClient createNetworkClient(String token) {
+        return new ReplayNetworkClient(this, token);
+    }
+
+    @Override
+    protected void startNetwork() {
+        // the events come from the capture
+    }
+
+    @Override
+    protected void shutdownNetwork() {
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.capture;
+
+import com.google.gson.TypeAdapter;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import org.jetbrains.annotations.NotNull;
+import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.network.NetworkClient;
+import snw.kookbc.impl.network.exceptions.BadResponseException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Answers the HTTP API calls with the responses recorded in a capture, no request is sent.
+public class ReplayNetworkClient extends NetworkClient {
+    private static final String EMPTY_RESPONSE = "{\"code\":0,\"message\":\"\",\"data\":{}}";
+    private volatile Map<String, String> responses = Collections.emptyMap();
+
+    public ReplayNetworkClient(KBCClient kbcClient, String token) {
+        super(kbcClient, token);
+    }
+
+    // key: "METHOD URL", value: the response body
+    public void setResponses(Map<String, String> responses) {
+        this.responses = new HashMap<>(responses);
+    }
+
+    @Override
+    public String call(Request request) {
+        String response = responses.get(request.method() + " " + request.url());
+        if (response != null) {
+            return response;
+        }
+        if ("GET".equals(request.method())) {
+            // we can't make up the data, so act like the remote doesn't know it
+            throw new BadResponseException(404, "No recorded response for " + request.url());
+        }
+        return EMPTY_RESPONSE; // the result of the POST calls is rarely used
+    }
+
+    @Override
+    protected <T> T execute(Request request, TypeAdapter<T> dataAdapter) {
+        return decodeData(call(request), dataAdapter);
+    }
+
+    @Override
+    protected <T> CompletableFuture<T> executeAsync(Request request, TypeAdapter<T> dataAdapter) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(execute(request, dataAdapter));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<String> callAsync(Request request) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            future.complete(call(request));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @NotNull
+    @Override
+    public WebSocket newWebSocket(@NotNull Request request, @NotNull WebSocketListener listener) {
+        throw new UnsupportedOperationException("No WebSocket connection in the replay mode");
+    }
+}
@@ -18,49 +18,61 @@
 
 package snw.kookbc.impl.network.webhook;
 
-import com.google.gson.JsonParser;
-import snw.kookbc.impl.KBCClient;
-
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.Base64;
 
+// Decrypts the messages from Kook with the Encrypt Key of the Webhook.
+// The key is prepared once, and each thread reuses its own Cipher.
 public class EncryptUtils {
-    public static String decrypt(KBCClient client, String src) {
-        String key = client.getConfig().getString("webhook-encrypt-key");
-        if (key != null && !key.isEmpty()) { // decryption
-            String decodedBase64 = new String(
-                    Base64.getDecoder().decode(
-                            JsonParser.parseString(src).getAsJsonObject().get("encrypt").getAsString()
-                    )
-            );
-            String iv = decodedBase64.substring(0, 16);
-            String newSecret = decodedBase64.substring(16);
-            byte[] queuedData = Base64.getDecoder().decode(newSecret);
-            StringBuilder finalKeyBuilder = new StringBuilder(key);
-            while (finalKeyBuilder.length() < 32) {
-                finalKeyBuilder.append("\0");
-            }
-            String finalKey = finalKeyBuilder.toString();
-            return decrypt(queuedData, iv, finalKey);
+    private static final int IV_LENGTH = 16;
+    private static final int KEY_LENGTH = 32;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/CBC/PKCS5Padding");
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
         }
-        // or not encrypted?
-        return src;
+    });
+
+    public EncryptUtils(String key) {
+        // the key is padded with '\0' to 32 bytes
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        this.key = new SecretKeySpec(keyBytes.length < KEY_LENGTH ? Arrays.copyOf(keyBytes, KEY_LENGTH) : keyBytes, "AES");
     }
 
-    static String decrypt(byte[] src, String iv, String key) {
+    // returns the length of the result written into the provided buffer,
+    //  or -(required size) if the buffer is too small.
+    // encrypted: the value of the "encrypt" field, it is Base64(IV + Base64(data))
+    public int decrypt(String encrypted, byte[] out) throws GeneralSecurityException {
+        byte[] decoded;
         try {
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(
-                    Cipher.DECRYPT_MODE,
-                    new SecretKeySpec(key.getBytes(), "AES"),
-                    new IvParameterSpec(iv.getBytes(StandardCharsets.UTF_8))
-            );
-            return new String(cipher.doFinal(src));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            decoded = Base64.getDecoder().decode(encrypted);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Bad Base64 data", e);
+        }
+        if (decoded.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("The data is too short");
+        }
+        ByteBuffer data;
+        try {
+            data = Base64.getDecoder().decode(ByteBuffer.wrap(decoded, IV_LENGTH, decoded.length - IV_LENGTH));
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Bad Base64 data", e);
+        }
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(decoded, 0, IV_LENGTH));
+        int required = cipher.getOutputSize(data.remaining());
+        if (out.length < required) {
+            return -required;
         }
+        return cipher.doFinal(data.array(), data.arrayOffset() + data.position(), data.remaining(), out, 0);
     }
 }
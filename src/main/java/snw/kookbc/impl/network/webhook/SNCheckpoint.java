@@ -0,0 +1,146 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.webhook;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+// Saves the SN of the Webhook mode into a small memory-mapped file.
+// The file has two slots, and the writes alternate between them. Each slot has a generation and a checksum,
+//  so a write interrupted by a crash can only break the slot being written, and the other one is still readable.
+// Writing to the mapped memory is not a system call, so every update is written immediately and survives
+//  the crash of the process, but the sync to the disk (which is the expensive part) only happens
+//  every N updates or T milliseconds, and on close.
+public class SNCheckpoint implements Closeable {
+    private static final int MAGIC = 0x4B424353; // "KBCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8; // magic, version
+    private static final int SLOT_SIZE = 16; // generation (long), SN (int), CRC32 of the previous 12 bytes (int)
+    private static final int FILE_SIZE = HEADER_SIZE + SLOT_SIZE * 2;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[12];
+    private final int flushEvents;
+    private final long flushIntervalMillis;
+    private long generation;
+    private int sn;
+    private int unflushed = 0;
+    private long lastFlush = System.currentTimeMillis();
+    private boolean closed = false;
+
+    public SNCheckpoint(File file, int flushEvents, long flushIntervalMillis) throws IOException {
+        this.flushEvents = Math.max(1, flushEvents);
+        this.flushIntervalMillis = Math.max(0, flushIntervalMillis);
+        this.file = new RandomAccessFile(file, "rw");
+        boolean fresh = this.file.length() < FILE_SIZE;
+        this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            // new or unknown file, start from zero
+            for (int i = 0; i < FILE_SIZE; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.force();
+            generation = 0;
+            sn = 0;
+        } else {
+            load();
+        }
+    }
+
+    // pick the valid slot with the newer generation
+    private void load() {
+        long bestGeneration = 0;
+        int bestSN = 0;
+        for (int slot = 0; slot < 2; slot++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long slotGeneration = buffer.getLong(offset);
+            int slotSN = buffer.getInt(offset + 8);
+            if (slotGeneration > bestGeneration && buffer.getInt(offset + 12) == checksum(slotGeneration, slotSN)) {
+                bestGeneration = slotGeneration;
+                bestSN = slotSN;
+            }
+        }
+        generation = bestGeneration;
+        sn = bestSN;
+    }
+
+    private int checksum(long generation, int sn) {
+        ByteBuffer.wrap(scratch).putLong(generation).putInt(sn);
+        crc.reset();
+        crc.update(scratch, 0, scratch.length);
+        return (int) crc.getValue();
+    }
+
+    public synchronized int getSN() {
+        return sn;
+    }
+
+    public synchronized void update(int sn) {
+        if (closed || (sn == this.sn && generation != 0)) {
+            return;
+        }
+        generation++;
+        this.sn = sn;
+        int offset = HEADER_SIZE + (int) (generation & 1) * SLOT_SIZE;
+        buffer.putLong(offset, generation);
+        buffer.putInt(offset + 8, sn);
+        buffer.putInt(offset + 12, checksum(generation, sn)); // written last, so the slot is invalid until now
+        if (++unflushed >= flushEvents) {
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    // sync to the disk if the updates have waited for too long, should be called periodically
+    public synchronized void flushIfDue() {
+        if (unflushed > 0 && System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        buffer.force();
+        unflushed = 0;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        file.close(); // the mapping is released when the buffer is collected
+    }
+}
@@ -18,31 +18,52 @@
 
 package snw.kookbc.impl.network.webhook;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
 import net.freeutils.httpserver.HTTPServer;
 import snw.kookbc.impl.KBCClient;
 import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.JsonBody;
 import snw.kookbc.impl.network.Listener;
 import snw.kookbc.impl.network.ListenerFactory;
+import snw.kookbc.impl.network.capture.FrameCapture;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
-
-import static snw.kookbc.util.Util.decompressDeflate;
-import static snw.kookbc.util.Util.inputStreamToByteArray;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SimpleHttpHandler implements HTTPServer.ContextHandler {
     protected final KBCClient client;
     protected final Listener listener;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong forbidden = new AtomicLong();
+    private final AtomicLong tooLarge = new AtomicLong();
+    private final WebHookDecoder decoder;
 
     public SimpleHttpHandler(KBCClient client) {
         this.client = client;
         listener = ListenerFactory.getListener(client);
+        decoder = new WebHookDecoder(
+                client.getConfig().getString("webhook-encrypt-key"),
+                Math.max(1, client.getConfig().getInt("webhook-threads", 8))
+        );
+    }
+
+    private static long getContentLength(HTTPServer.Request request) {
+        String value = request.getHeaders().get("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     @Override
@@ -57,35 +78,45 @@ public class SimpleHttpHandler implements HTTPServer.ContextHandler {
 
     private int serve0(HTTPServer.Request request, HTTPServer.Response response) throws Exception {
         client.getCore().getLogger().debug("Got request!");
-        String res;
-        byte[] bytes = inputStreamToByteArray(request.getBody());
-        if (bytes.length == 0) {
-            return 403;
+        long contentLength = getContentLength(request);
+        if (contentLength > WebHookDecoder.MAX_BODY_SIZE) {
+            tooLarge.incrementAndGet();
+            return 413;
         }
-        if (!"0".equals(request.getParams().get("compress"))) {
-            res = new String(decompressDeflate(bytes));
-        } else {
-            res = new String(bytes);
+        Frame frame;
+        try {
+            frame = decoder.decode(request.getBody(), contentLength, !"0".equals(request.getParams().get("compress")));
+        } catch (WebHookDecoder.TooLargeException e) {
+            client.getCore().getLogger().debug("The request body is too large", e);
+            tooLarge.incrementAndGet();
+            return 413;
+        } catch (IOException | JsonParseException e) {
+            // don't log it as an error, or the log will be flooded if someone is sending garbage to us
+            client.getCore().getLogger().debug("Unable to decode the request", e);
+            forbidden.incrementAndGet();
+            return 400;
         }
-        JsonObject object = JsonParser.parseString(EncryptUtils.decrypt(client, res)).getAsJsonObject();
-        Frame frame = new Frame(
-                object.get("s").getAsInt(),
-                object.has("sn") ? object.get("sn").getAsInt() : -1,
-                object.getAsJsonObject("d")
-        );
-        if (!Objects.equals(
-                frame.getData().get("verify_token").getAsString(),
-                client.getConfig().getString("webhook-verify-token"))
-        ) {
+        if (frame == null || frame.getData() == null) {
+            forbidden.incrementAndGet();
+            return 403; // Illegal access
+        }
+        JsonElement verifyToken = frame.getData().get("verify_token");
+        if (verifyToken == null || !Objects.equals(verifyToken.getAsString(), client.getConfig().getString("webhook-verify-token"))) {
+            forbidden.incrementAndGet();
             return 403; // Illegal access
         } else {
+            // only the accepted frames are recorded, the forged ones must not be replayed
+            FrameCapture capture = client.getFrameCapture();
+            if (capture != null) {
+                capture.recordText(frame.toJson()); // decrypted, so the replay doesn't need the key
+            }
             // challenge part
             JsonElement channelType = frame.getData().get("channel_type");
             if (channelType != null && Objects.equals(channelType.getAsString(), "WEBHOOK_CHALLENGE")) {
                 String finalChallengeResponse = frame.getData().get("challenge").getAsString();
                 JsonObject obj = new JsonObject();
                 obj.addProperty("challenge", finalChallengeResponse);
-                String challengeJson = new Gson().toJson(obj);
+                String challengeJson = JsonBody.GSON.toJson(obj);
 
                 // the following part is copied from HTTPServer.Response.send method.
                 // I just edited the value of the "contentType" parameter.
@@ -105,11 +136,43 @@ public class SimpleHttpHandler implements HTTPServer.ContextHandler {
             }
             // end challenge part
             else {
-                listener.executeEvent(frame);
+                try {
+                    listener.executeEvent(frame); // only queued here, so we can respond before it is processed
+                } catch (RejectedExecutionException e) {
+                    rejected.incrementAndGet();
+                    client.getCore().getLogger().debug("The event queue is full, rejected the request.");
+                    response.getHeaders().add("Retry-After", "1");
+                    return 503; // Kook will retry later
+                }
+                accepted.incrementAndGet();
                 response.send(200, "");
             }
         }
         return 0;
     }
 
+    // the count of the events accepted into the queue
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    // the count of the events rejected because the queue is full
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    // the count of the requests rejected because they are not from Kook, or malformed
+    public long getForbidden() {
+        return forbidden.get();
+    }
+
+    // the count of the requests rejected because the body is too large (413)
+    public long getTooLarge() {
+        return tooLarge.get();
+    }
+
+    // Release the resources of the decoder, called after the route is removed from the server.
+    public void close() {
+        decoder.close();
+    }
 }
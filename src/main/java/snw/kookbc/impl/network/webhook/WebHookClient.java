@@ -18,25 +18,55 @@
 
 package snw.kookbc.impl.network.webhook;
 
-import net.freeutils.httpserver.HTTPServer;
+import org.jetbrains.annotations.Nullable;
 import snw.jkook.config.file.YamlConfiguration;
 import snw.kookbc.impl.CoreImpl;
 import snw.kookbc.impl.KBCClient;
-import snw.kookbc.util.PrefixThreadFactory;
+import snw.kookbc.impl.SharedResources;
+import snw.kookbc.util.SerialExecutor;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class WebHookClient extends KBCClient {
-    protected HTTPServer server;
+    protected int port;
+    protected String route; // null if the server is not started
+    protected SimpleHttpHandler handler;
+    protected SNCheckpoint checkpoint;
 
     public WebHookClient(CoreImpl core, YamlConfiguration config, File pluginsFolder, String token) {
         super(core, config, pluginsFolder, token);
     }
 
+    // The clients using the same port share one HTTP server, so make sure their routes are different.
+    public WebHookClient(CoreImpl core, YamlConfiguration config, File pluginsFolder, String token, @Nullable SharedResources sharedResources) {
+        super(core, config, pluginsFolder, token, sharedResources);
+    }
+
+    // Bounded, so the HTTP handler can reject the requests with 503 when the events come faster than we can process.
+    @Override
+    protected ExecutorService createEventExecutor(@Nullable SharedResources sharedResources) {
+        int capacity = getConfig().getInt("webhook-queue", 1024);
+        if (capacity <= 0) {
+            return super.createEventExecutor(sharedResources);
+        }
+        if (sharedResources != null) {
+            return new SerialExecutor(sharedResources.getEventPool(), sharedResources.getBatchSize(), capacity);
+        }
+        return new ThreadPoolExecutor(
+                1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                r -> new Thread(r, "Event Executor")
+        ); // AbortPolicy by default
+    }
+
     @Override
     protected void startNetwork() {
         try {
@@ -52,33 +82,74 @@ public class WebHookClient extends KBCClient {
             throw new IllegalArgumentException("No route provided!");
         }
         int port = getConfig().getInt("webhook-port");
+        int threads = Math.max(1, getConfig().getInt("webhook-threads", 8));
+        int connectionQueue = Math.max(1, getConfig().getInt("webhook-connection-queue", 64));
 
         // Initialize server
-        server = new HTTPServer(port);
-        server.setExecutor(Executors.newCachedThreadPool(new PrefixThreadFactory("Webhook Thread #")));
-        HTTPServer.VirtualHost virtualHost = server.getVirtualHost(null);
-        virtualHost.addContext('/' + route, new SimpleHttpHandler(this), "POST");
-        server.start(); // throws IOException
-        getCore().getLogger().info("HTTP Server is listening on port {}", port);
+        handler = new SimpleHttpHandler(this);
+        if (WebHookServer.register(port, route, handler, threads, connectionQueue)) { // throws IOException
+            getCore().getLogger().info("HTTP Server is listening on port {}", port);
+        } else {
+            getCore().getLogger().info("Joined the HTTP Server on port {} with route {}", port, route);
+        }
+        this.port = port;
+        this.route = route;
         // end Initialize server
 
         getCore().getLogger().debug("Initializing SN from local file.");
-        int initSN = 0;
-        File snfile = new File(getPluginsFolder(), "sn");
-        if (snfile.exists()) {
-            List<String> lines = Files.readAllLines(Paths.get(snfile.toURI()));
-            if (!lines.isEmpty()) {
-                initSN = Integer.parseInt(lines.get(0));
+        int flushEvents = getConfig().getInt("webhook-sn-flush-events", 100);
+        long flushInterval = getConfig().getLong("webhook-sn-flush-interval", 1000L);
+        checkpoint = new SNCheckpoint(new File(getPluginsFolder(), "sn.dat"), flushEvents, flushInterval);
+        File legacyFile = new File(getPluginsFolder(), "sn");
+        if (legacyFile.exists()) {
+            // the plain text file used by the older versions
+            List<String> lines = Files.readAllLines(Paths.get(legacyFile.toURI()));
+            if (!lines.isEmpty() && checkpoint.getSN() == 0) {
+                checkpoint.update(Integer.parseInt(lines.get(0).trim()));
+                checkpoint.flush();
             }
+            Files.delete(legacyFile.toPath());
+            getCore().getLogger().debug("Migrated the SN from the legacy file.");
+        }
+        getSession().getSN().set(checkpoint.getSN());
+        if (flushInterval > 0) {
+            getCore().getScheduler().runTaskTimer(getInternalPlugin(), checkpoint::flushIfDue, flushInterval, flushInterval);
         }
-        getSession().getSN().set(initSN);
     }
 
     @Override
     protected void shutdownNetwork() {
-        if (server != null) {
-            getCore().getLogger().info("Stopping HTTP Server");
-            server.stop();
+        if (route != null) {
+            if (WebHookServer.unregister(port, route)) {
+                getCore().getLogger().info("Stopping HTTP Server");
+            }
+            route = null;
+        }
+        if (handler != null) {
+            handler.close();
+        }
+        if (checkpoint != null) {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                getCore().getLogger().warn("Unable to save SN to local.", e);
+            }
+        }
+    }
+
+    // null if the network is not started
+    public SNCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    protected List<String> getStatus() {
+        List<String> result = super.getStatus();
+        if (handler != null) {
+            result.add(String.format("Webhook 事件队列: 已接受 %d, 已拒绝 (503) %d, 非法请求 %d, 请求过大 (413) %d",
+                    handler.getAccepted(), handler.getRejected(), handler.getForbidden(), handler.getTooLarge()));
+            result.add(String.format("Webhook 连接: 服务繁忙被拒绝 (503) %d", WebHookServer.getSaturatedConnections(port)));
         }
+        return result;
     }
 }
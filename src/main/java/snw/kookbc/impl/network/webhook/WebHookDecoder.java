@@ -0,0 +1,212 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.webhook;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import org.jetbrains.annotations.Nullable;
+import snw.kookbc.impl.network.Frame;
+import snw.kookbc.impl.network.FrameDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Turns the body of the Webhook requests into Frame objects.
+// The buffers and the Inflaters are kept in a bounded pool, the Cipher is reused by each thread, and the JSON is parsed once.
+// The Verify Token is checked by the caller on the parsed frame, a byte scan could miss it when it is JSON-escaped.
+public class WebHookDecoder {
+    // the events from Kook are far smaller than this, larger requests are rejected without reading them.
+    public static final int MAX_BODY_SIZE = 4 * 1024 * 1024;
+    // the buffers grown larger than this by a big request are dropped after use
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private final @Nullable EncryptUtils encryptUtils;
+    private final BlockingQueue<Buffers> pool;
+    private volatile boolean closed = false;
+
+    // poolSize: the count of the idle Buffers to keep, usually the count of the threads calling decode()
+    public WebHookDecoder(@Nullable String encryptKey, int poolSize) {
+        this.encryptUtils = encryptKey != null && !encryptKey.isEmpty() ? new EncryptUtils(encryptKey) : null;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    // returns null if the request is not from Kook (the body is empty, or the data can't be decrypted).
+    // contentLength: -1 if unknown
+    public @Nullable Frame decode(InputStream body, long contentLength, boolean compressed) throws IOException {
+        if (contentLength > MAX_BODY_SIZE) {
+            throw new TooLargeException("The request body is too large");
+        }
+        Buffers buf = pool.poll();
+        if (buf == null) {
+            buf = new Buffers();
+        }
+        try {
+            return decode(buf, body, (int) contentLength, compressed);
+        } finally {
+            buf.trim();
+            if (!pool.offer(buf)) {
+                buf.inflater.end(); // the pool is full
+            }
+            if (closed) {
+                close();
+            }
+        }
+    }
+
+    // Release the native resources of the pooled Inflaters.
+    // The Buffers in use at this time are released when they are given back.
+    public void close() {
+        closed = true;
+        Buffers buf;
+        while ((buf = pool.poll()) != null) {
+            buf.inflater.end();
+        }
+    }
+
+    private @Nullable Frame decode(Buffers buf, InputStream body, int contentLength, boolean compressed) throws IOException {
+        int length = buf.read(body, contentLength);
+        if (length == 0) {
+            return null;
+        }
+        byte[] data = buf.body;
+        if (compressed) {
+            length = buf.inflate(length);
+            data = buf.inflated;
+        }
+        if (encryptUtils != null) {
+            String encrypted = readEncryptField(data, length);
+            if (encrypted == null) {
+                return null;
+            }
+            try {
+                int result;
+                while ((result = encryptUtils.decrypt(encrypted, buf.decrypted)) < 0) {
+                    buf.decrypted = new byte[-result];
+                }
+                length = result;
+            } catch (GeneralSecurityException e) {
+                return null; // not encrypted with our key
+            }
+            data = buf.decrypted;
+        }
+        return FrameDecoder.readFrame(new InputStreamReader(new ByteArrayInputStream(data, 0, length), StandardCharsets.UTF_8));
+    }
+
+    // the encrypted message is {"encrypt": "..."}
+    private static String readEncryptField(byte[] data, int length) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(data, 0, length), StandardCharsets.UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("encrypt".equals(reader.nextName())) {
+                    return reader.nextString();
+                }
+                reader.skipValue();
+            }
+            return null;
+        } catch (IllegalStateException e) {
+            throw new JsonParseException("Malformed encrypted message", e);
+        }
+    }
+
+    // thrown if the request body is larger than MAX_BODY_SIZE, or it is too large after decompression
+    public static class TooLargeException extends IOException {
+        public TooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Buffers {
+        static final int BODY_SIZE = 8192;
+        static final int INFLATED_SIZE = 16384;
+        static final int DECRYPTED_SIZE = 16384;
+
+        final Inflater inflater = new Inflater();
+        byte[] body = new byte[BODY_SIZE];
+        byte[] inflated = new byte[INFLATED_SIZE];
+        byte[] decrypted = new byte[DECRYPTED_SIZE];
+
+        // don't keep the memory used by a rare big request
+        void trim() {
+            if (body.length > MAX_RETAINED_SIZE) {
+                body = new byte[BODY_SIZE];
+            }
+            if (inflated.length > MAX_RETAINED_SIZE) {
+                inflated = new byte[INFLATED_SIZE];
+            }
+            if (decrypted.length > MAX_RETAINED_SIZE) {
+                decrypted = new byte[DECRYPTED_SIZE];
+            }
+        }
+
+        int read(InputStream in, int contentLength) throws IOException {
+            if (contentLength > body.length) {
+                body = new byte[contentLength];
+            }
+            int length = 0;
+            int n;
+            while (length != contentLength) { // no need to wait for the EOF if the length is known
+                if (length == body.length) {
+                    if (length >= MAX_BODY_SIZE) {
+                        throw new TooLargeException("The request body is too large");
+                    }
+                    body = Arrays.copyOf(body, Math.min(length << 1, MAX_BODY_SIZE));
+                }
+                if ((n = in.read(body, length, body.length - length)) == -1) {
+                    break;
+                }
+                length += n;
+            }
+            return length;
+        }
+
+        int inflate(int length) throws IOException {
+            inflater.reset();
+            inflater.setInput(body, 0, length);
+            int result = 0;
+            try {
+                while (!inflater.finished()) {
+                    if (result == inflated.length) {
+                        if (result >= MAX_BODY_SIZE * 4) {
+                            throw new TooLargeException("The decompressed request body is too large");
+                        }
+                        inflated = Arrays.copyOf(inflated, result << 1);
+                    }
+                    int n = inflater.inflate(inflated, result, inflated.length - result);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated compressed data");
+                    }
+                    result += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Bad compressed data", e);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.impl.network.webhook;
+
+import net.freeutils.httpserver.HTTPServer;
+import snw.kookbc.util.PrefixThreadFactory;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The HTTP server of the Webhook mode.
+// The clients listening on the same port share one server, the requests are routed to them by the path.
+public class WebHookServer implements HTTPServer.ContextHandler {
+    private static final Map<Integer, WebHookServer> servers = new HashMap<>();
+    private static final byte[] SERVICE_UNAVAILABLE = ("HTTP/1.1 503 Service Unavailable\r\n" +
+            "Retry-After: 1\r\n" +
+            "Content-Length: 0\r\n" +
+            "Connection: close\r\n" +
+            "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final int port;
+    private final HTTPServer server;
+    private final Map<String, HTTPServer.ContextHandler> routes = new ConcurrentHashMap<>();
+    private final AtomicLong saturated = new AtomicLong(); // the connections answered with 503 because all the threads were busy
+    private Socket lastAccepted; // only accessed on the accepting thread of the HTTPServer
+
+    private WebHookServer(int port, int threads, int queueSize) {
+        this.port = port;
+        this.server = new HTTPServer(port);
+        server.setServerSocketFactory(new TrackingServerSocketFactory());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new PrefixThreadFactory("Webhook Thread #"),
+                // don't throw, or the accepting thread of the HTTPServer will die.
+                // the rejected connection is answered with 503 on the accepting thread, it is never served there
+                (task, pool) -> rejectLastAccepted()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        server.setExecutor(executor);
+        // the longest matching context wins in the HTTPServer, so this one receives all the requests
+        server.getVirtualHost(null).addContext("/", this, "POST");
+    }
+
+    // returns true if a new server was started for this route.
+    // the threads and queueSize parameters are only used when starting a new server.
+    public static synchronized boolean register(int port, String route, HTTPServer.ContextHandler handler, int threads, int queueSize) throws IOException {
+        String path = normalize(route);
+        WebHookServer server = servers.get(port);
+        boolean created = false;
+        if (server == null) {
+            server = new WebHookServer(port, threads, queueSize);
+            server.server.start(); // throws IOException
+            servers.put(port, server);
+            created = true;
+        }
+        if (server.routes.putIfAbsent(path, handler) != null) {
+            if (created) {
+                servers.remove(port);
+                server.server.stop();
+            }
+            throw new IllegalStateException("The route " + path + " on port " + port + " is already in use");
+        }
+        return created;
+    }
+
+    // returns true if the server was stopped because no route is left
+    public static synchronized boolean unregister(int port, String route) {
+        WebHookServer server = servers.get(port);
+        if (server == null) {
+            return false;
+        }
+        server.routes.remove(normalize(route));
+        if (server.routes.isEmpty()) {
+            servers.remove(port);
+            server.server.stop();
+            return true;
+        }
+        return false;
+    }
+
+    // returns the count of the connections answered with 503 because the server on the port was saturated
+    public static synchronized long getSaturatedConnections(int port) {
+        WebHookServer server = servers.get(port);
+        return server != null ? server.saturated.get() : 0L;
+    }
+
+    private static String normalize(String route) {
+        String path = route.startsWith("/") ? route : '/' + route;
+        while (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    @Override
+    public int serve(HTTPServer.Request request, HTTPServer.Response response) throws IOException {
+        HTTPServer.ContextHandler handler = routes.get(normalize(request.getPath()));
+        if (handler == null) {
+            return 404;
+        }
+        return handler.serve(request, response);
+    }
+
+    // Called on the accepting thread when the executor is saturated (or stopped).
+    // A response this small fits in the send buffer of the new socket, so the write doesn't block.
+    private void rejectLastAccepted() {
+        saturated.incrementAndGet();
+        Socket socket = lastAccepted;
+        lastAccepted = null;
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.getOutputStream().write(SERVICE_UNAVAILABLE);
+            socket.getOutputStream().flush();
+        } catch (IOException ignored) {
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WebHookServer{" +
+                "port=" + port + "," +
+                "routes=" + routes.keySet() +
+                "}";
+    }
+
+    // Remembers the socket accepted last, the HTTPServer only passes an opaque task to the executor.
+    private final class TrackingServerSocket extends ServerSocket {
+        TrackingServerSocket() throws IOException {
+            super();
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket socket = super.accept();
+            lastAccepted = socket;
+            return socket;
+        }
+    }
+
+    private final class TrackingServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new TrackingServerSocket();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return createServerSocket(port, 50, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            return createServerSocket(port, backlog, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            ServerSocket socket = createServerSocket();
+            socket.bind(new InetSocketAddress(address, port), backlog);
+            return socket;
+        }
+    }
+}
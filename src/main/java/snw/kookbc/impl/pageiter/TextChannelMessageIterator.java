@@ -25,8 +25,8 @@ import snw.jkook.entity.User;
 import snw.jkook.entity.channel.TextChannel;
 import snw.jkook.message.Message;
 import snw.jkook.message.TextChannelMessage;
-import snw.jkook.message.component.BaseComponent;
 import snw.kookbc.impl.KBCClient;
+import snw.kookbc.impl.message.LazyComponent;
 import snw.kookbc.impl.message.TextChannelMessageImpl;
 import snw.kookbc.impl.network.HttpAPIRoute;
 
@@ -75,7 +75,7 @@ public class TextChannelMessageIterator extends PageIteratorImpl<Collection<Text
         long timeStamp = object.get("create_at").getAsLong();
         JsonObject authorObj = object.getAsJsonObject("author");
         User author = client.getStorage().getUser(authorObj.get("id").getAsString(), authorObj);
-        BaseComponent component = client.getMessageBuilder().buildComponent(object);
+        LazyComponent component = LazyComponent.of(client.getMessageBuilder(), object);
         return new TextChannelMessageImpl(
                 client,
                 id,
@@ -35,6 +35,7 @@ import static snw.kookbc.util.Util.pluginNotNull;
 public class SchedulerImpl implements Scheduler {
     private final KBCClient client;
     public final ScheduledExecutorService pool;
+    private final boolean ownPool; // false if the pool is shared with other clients
     private final AtomicInteger ids = new AtomicInteger(1);
     private final Map<Integer, TaskImpl> scheduledTasks = new ConcurrentHashMap<>();
 
@@ -49,6 +50,14 @@ public class SchedulerImpl implements Scheduler {
     public SchedulerImpl(KBCClient client, int corePoolSize, ThreadFactory factory) {
         this.client = client;
         pool = Executors.newScheduledThreadPool(corePoolSize, factory);
+        ownPool = true;
+    }
+
+    // Use the pool of SharedResources, it won't be shut down with this scheduler.
+    public SchedulerImpl(KBCClient client, ScheduledExecutorService sharedPool) {
+        this.client = client;
+        pool = sharedPool;
+        ownPool = false;
     }
 
 
@@ -127,7 +136,7 @@ public class SchedulerImpl implements Scheduler {
 
     public void shutdown() {
         scheduledTasks.keySet().forEach(this::cancelTask);
-        if (!pool.isShutdown()) {
+        if (ownPool && !pool.isShutdown()) {
             pool.shutdown();
             try {
                 //noinspection ResultOfMethodCallIgnored
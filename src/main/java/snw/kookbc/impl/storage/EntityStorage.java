@@ -107,7 +107,25 @@ public class EntityStorage {
     }
 
     public Role getRole(Guild guild, int id) {
-        return roles.getIfPresent(guild.getId() + "#" + id);
+        return getRole(guild.getId(), id);
+    }
+
+    public Role getRole(String guildId, int id) {
+        return roles.getIfPresent(guildId + "#" + id);
+    }
+
+    // The following methods never load the object, null if it is not cached.
+
+    public User getCachedUser(String id) {
+        return users.getIfPresent(id);
+    }
+
+    public Guild getCachedGuild(String id) {
+        return guilds.getIfPresent(id);
+    }
+
+    public Channel getCachedChannel(String id) {
+        return channels.getIfPresent(id);
     }
 
     public CustomEmoji getEmoji(String id) {
@@ -208,7 +226,11 @@ public class EntityStorage {
     }
 
     public void removeReaction(Reaction reaction) {
-        reactions.invalidate(reaction.getMessageId() + "#" + reaction.getEmoji().getId() + "#" + reaction.getSender().getId());
+        removeReaction(reaction.getMessageId(), reaction.getEmoji().getId(), reaction.getSender().getId());
+    }
+
+    public void removeReaction(String msgId, String emojiId, String senderId) {
+        reactions.invalidate(msgId + "#" + emojiId + "#" + senderId);
     }
 
     // Only called when the message is invalid
@@ -30,14 +30,16 @@ import java.util.concurrent.TimeUnit;
 public class BotMarketPingThread extends Thread {
     private final KBCClient client;
     private final Request request;
-    private static final OkHttpClient networkClient = new OkHttpClient.Builder()
-            .connectTimeout(60, TimeUnit.SECONDS)
-            .callTimeout(60, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .build();
+    private final OkHttpClient networkClient;
 
     public BotMarketPingThread(KBCClient client, String rawBotMarketUUID) {
         this.client = client;
+        // the BotMarket is slow sometimes, but the connections are still shared with the other consumers
+        this.networkClient = client.getNetworkClient().getHttpClient().newBuilder()
+                .connectTimeout(60, TimeUnit.SECONDS)
+                .callTimeout(60, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
         this.request = new Request.Builder()
                 .get()
                 .url("https://bot.gekj.net/api/v1/online.bot")
@@ -20,7 +20,6 @@ package snw.kookbc.impl.tasks;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import snw.kookbc.SharedConstants;
@@ -56,7 +55,7 @@ public final class UpdateChecker extends Thread {
         }
 
         JsonObject resObj;
-        try (Response response = new OkHttpClient().newCall(
+        try (Response response = client.getNetworkClient().getHttpClient().newCall(
                 new Request.Builder()
                         .get()
                         .url("https://api.github.com/repos/SNWCreations/KookBC/releases/latest")
@@ -0,0 +1,144 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// A small log-linear histogram of latency values, in microseconds.
+// Every power of two is split into 16 buckets, so the error of the percentiles is about 6%.
+// Thread-safe.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] buckets = new long[SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private long count = 0;
+    private long max = 0;
+    private long sum = 0;
+
+    public void record(long value, TimeUnit unit) {
+        recordMicros(unit.toMicros(value));
+    }
+
+    public synchronized void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        buckets[indexOf(micros)]++;
+        count++;
+        sum += micros;
+        if (micros > max) {
+            max = micros;
+        }
+    }
+
+    // p should be in (0, 1], e.g. 0.99 for p99. returns 0 if no value recorded.
+    public synchronized long getPercentileMicros(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(p * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getPercentileMillis(double p) {
+        return TimeUnit.MICROSECONDS.toMillis(getPercentileMicros(p));
+    }
+
+    public synchronized long getMaxMicros() {
+        return max;
+    }
+
+    public synchronized long getMeanMicros() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    // adds all the values recorded by the other histogram into this one
+    public void add(LatencyHistogram other) {
+        long[] otherBuckets;
+        long otherCount;
+        long otherMax;
+        long otherSum;
+        synchronized (other) {
+            otherBuckets = other.buckets.clone();
+            otherCount = other.count;
+            otherMax = other.max;
+            otherSum = other.sum;
+        }
+        synchronized (this) {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] += otherBuckets[i];
+            }
+            count += otherCount;
+            sum += otherSum;
+            if (otherMax > max) {
+                max = otherMax;
+            }
+        }
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0L);
+        count = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, p50=%.1fms, p99=%.1fms, max=%.1fms",
+                getCount(),
+                getPercentileMicros(0.5) / 1000.0,
+                getPercentileMicros(0.99) / 1000.0,
+                getMaxMicros() / 1000.0
+        );
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int shift = exponent - SUB_BUCKET_BITS;
+        int mantissa = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + shift * SUB_BUCKETS + mantissa;
+    }
+
+    // the highest value that can be put into the provided bucket
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int mantissa = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (((long) (SUB_BUCKETS + mantissa + 1)) << shift) - 1;
+    }
+}
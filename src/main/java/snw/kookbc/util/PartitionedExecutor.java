@@ -0,0 +1,97 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs tasks on a fixed count of serial lanes.
+// The tasks submitted with the same key always go to the same lane, so they run in submission order,
+//  while the tasks on different lanes run in parallel.
+public class PartitionedExecutor {
+    private static final int BATCH_SIZE = 32; // only matters if the backend is shared
+
+    private final SerialExecutor[] lanes;
+    private final ExecutorService ownedBackend; // null if the backend is shared with others
+
+    // create the lanes with their own threads, one thread per lane
+    public PartitionedExecutor(int laneCount, String threadNamePrefix) {
+        this(laneCount, Executors.newFixedThreadPool(checkLaneCount(laneCount), new PrefixThreadFactory(threadNamePrefix)), BATCH_SIZE, true);
+    }
+
+    // create the lanes on the threads of the provided executor, the executor won't be shut down by this object
+    public PartitionedExecutor(int laneCount, Executor sharedBackend, int batchSize) {
+        this(checkLaneCount(laneCount), sharedBackend, batchSize, false);
+    }
+
+    private PartitionedExecutor(int laneCount, Executor backend, int batchSize, boolean ownsBackend) {
+        lanes = new SerialExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new SerialExecutor(backend, batchSize);
+        }
+        ownedBackend = ownsBackend ? (ExecutorService) backend : null;
+    }
+
+    private static int checkLaneCount(int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("The count of lanes must be positive");
+        }
+        return laneCount;
+    }
+
+    public void execute(Object key, Runnable task) {
+        lanes[getLane(key)].execute(task);
+    }
+
+    public int getLane(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16); // spread the high bits, the hash of the IDs from remote is not well distributed
+        return (h & 0x7FFFFFFF) % lanes.length;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    // the count of the tasks waiting in the provided lane, the running one is not included
+    public int getQueueDepth(int lane) {
+        return lanes[lane].size();
+    }
+
+    public int[] getQueueDepths() {
+        int[] result = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            result[i] = getQueueDepth(i);
+        }
+        return result;
+    }
+
+    public void shutdown() {
+        for (SerialExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        if (ownedBackend != null) {
+            ownedBackend.shutdown();
+        }
+    }
+}
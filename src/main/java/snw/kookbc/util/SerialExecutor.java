@@ -0,0 +1,167 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the tasks one by one in submission order on the threads of another Executor,
+//  without holding a thread while there is nothing to do.
+// To be fair to the other users of the same Executor, it gives up the thread after running a batch of tasks,
+//  and queues itself again behind the others.
+public class SerialExecutor extends AbstractExecutorService {
+    private final Executor backend;
+    private final int batchSize;
+    private final int capacity; // 0 means unbounded
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(); // ConcurrentLinkedQueue#size is O(n)
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Object terminationLock = new Object();
+    private volatile boolean shutdown = false;
+
+    public SerialExecutor(Executor backend, int batchSize) {
+        this(backend, batchSize, 0);
+    }
+
+    // the tasks submitted while there are already "capacity" tasks waiting will be rejected
+    public SerialExecutor(Executor backend, int batchSize, int capacity) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must not be negative");
+        }
+        this.backend = backend;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void execute(@NotNull Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("This executor has been shut down");
+        }
+        if (size.incrementAndGet() > capacity && capacity > 0) {
+            size.decrementAndGet();
+            throw new RejectedExecutionException("This executor is full");
+        }
+        tasks.offer(command);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                backend.execute(this::runBatch);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void runBatch() {
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                size.decrementAndGet();
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // the tasks submitted while we were finishing can't schedule us, so check again
+            if (!tasks.isEmpty()) {
+                try {
+                    schedule();
+                } catch (RejectedExecutionException ignored) {
+                    // the backend is stopping
+                }
+            } else if (shutdown) {
+                synchronized (terminationLock) {
+                    terminationLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    // the count of the tasks waiting in this executor, the running one is not included
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        synchronized (terminationLock) {
+            terminationLock.notifyAll();
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> result = new ArrayList<>();
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            size.decrementAndGet();
+            result.add(task);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && tasks.isEmpty() && !scheduled.get();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *     KookBC -- The Kook Bot Client & JKook API standard implementation for Java.
+ *     Copyright (C) 2022 - 2023 KookBC contributors
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package snw.kookbc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// A bounded lock-free queue for exactly one producer thread and one consumer thread.
+// The capacity will be rounded up to the nearest power of two.
+public class SpscRingBuffer<E> {
+    private final Object[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // the next slot to read, only written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // the next slot to write, only written by the producer
+
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int actual = Integer.highestOneBit(capacity);
+        if (actual < capacity) {
+            actual <<= 1;
+        }
+        buffer = new Object[actual];
+        mask = actual - 1;
+    }
+
+    // producer only. return false if the buffer is full.
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long t = tail.get();
+        if (t - head.get() == buffer.length) {
+            return false;
+        }
+        buffer[(int) (t & mask)] = element;
+        tail.set(t + 1); // publish the element
+        return true;
+    }
+
+    // consumer only. return null if the buffer is empty.
+    public E poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int index = (int) (h & mask);
+        @SuppressWarnings("unchecked")
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.set(h + 1); // release the slot
+        return element;
+    }
+
+    // an estimate if it is not called by the producer or the consumer
+    public int size() {
+        long h = head.get();
+        return (int) Math.min(tail.get() - h, buffer.length);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}